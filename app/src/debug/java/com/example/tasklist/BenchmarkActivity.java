@@ -0,0 +1,61 @@
+package com.example.tasklist;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.util.Log;
+import android.widget.Button;
+import android.widget.TextView;
+
+import org.json.JSONObject;
+
+import java.io.File;
+
+/**
+ * Экран запуска замеров (TaskBenchmark). Есть только в отладочной сборке (src/debug) —
+ * долгое нажатие на заголовок списка.
+ */
+public class BenchmarkActivity extends AppCompatActivity {
+    private static final String TAG = "BenchmarkActivity";
+
+    private TextView tvOutput;
+    private Button btnRun;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_benchmark);
+
+        tvOutput = findViewById(R.id.tvBenchOutput);
+        btnRun = findViewById(R.id.btnRunBench);
+        btnRun.setOnClickListener(v -> runBenchmark());
+        findViewById(R.id.btnOpenMetrics).setOnClickListener(v ->
+                startActivity(new Intent(this, MetricsActivity.class)));
+    }
+
+    private void runBenchmark() {
+        btnRun.setEnabled(false);
+        tvOutput.setText("");
+        new Thread(() -> {
+            String text;
+            try {
+                TaskBenchmark bench = new TaskBenchmark(this, step ->
+                        runOnUiThread(() -> tvOutput.append(step + "\n")));
+                JSONObject report = bench.run();
+                File file = TaskBenchmark.writeReport(this, report);
+                Log.i(TAG, "benchmark report: " + file);
+                text = "Сохранено: " + file + "\n\n" + report.toString(2);
+            } catch (Exception e) {
+                Log.e(TAG, "benchmark error", e);
+                text = "Ошибка: " + e;
+            }
+            final String result = text;
+            runOnUiThread(() -> {
+                if (isFinishing() || isDestroyed()) return;
+                tvOutput.setText(result);
+                btnRun.setEnabled(true);
+            });
+        }, "task-benchmark").start();
+    }
+}
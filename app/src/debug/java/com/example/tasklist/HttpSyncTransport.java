@@ -0,0 +1,59 @@
+package com.example.tasklist;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * SyncTransport поверх HttpURLConnection. Accept-Encoding задан явно, поэтому ответ приходит
+ * сжатым как есть (прозрачная распаковка выключена) и распаковывается в TaskSync.
+ */
+public class HttpSyncTransport implements SyncTransport {
+    private static final int CONNECT_TIMEOUT_MS = 10_000;
+    private static final int READ_TIMEOUT_MS = 30_000;
+
+    private final String baseUrl;
+
+    // baseUrl без завершающего "/", например http://127.0.0.1:8080
+    public HttpSyncTransport(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    @Override
+    public byte[] post(String path, byte[] gzipBody) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        try {
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            conn.setReadTimeout(READ_TIMEOUT_MS);
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setFixedLengthStreamingMode(gzipBody.length);
+            conn.setRequestProperty("Content-Type", "application/json");
+            conn.setRequestProperty("Content-Encoding", "gzip");
+            conn.setRequestProperty("Accept-Encoding", "gzip");
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(gzipBody);
+            }
+            int code = conn.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new StatusException(code, conn.getResponseMessage());
+            }
+            try (InputStream in = conn.getInputStream()) {
+                return readAll(in);
+            }
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[16 * 1024];
+        int n;
+        while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+        return out.toByteArray();
+    }
+}
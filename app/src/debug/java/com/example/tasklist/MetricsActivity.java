@@ -0,0 +1,60 @@
+package com.example.tasklist;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import android.os.Bundle;
+import android.util.Log;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.File;
+
+/**
+ * Экран метрик (Metrics): перцентили задержек, число строк в ответах, медленные запросы.
+ * Есть только в отладочной сборке (src/debug) — открывается с экрана замеров.
+ */
+public class MetricsActivity extends AppCompatActivity {
+    private static final String TAG = "MetricsActivity";
+
+    private TextView tvOutput;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+
+        tvOutput = findViewById(R.id.tvMetricsOutput);
+        findViewById(R.id.btnMetricsRefresh).setOnClickListener(v -> refresh());
+        findViewById(R.id.btnMetricsReset).setOnClickListener(v -> {
+            Metrics.reset();
+            refresh();
+        });
+        findViewById(R.id.btnMetricsSave).setOnClickListener(v -> save());
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        refresh();
+    }
+
+    private void refresh() {
+        tvOutput.setText(Metrics.summary());
+    }
+
+    private void save() {
+        new Thread(() -> {
+            String message;
+            try {
+                File file = Metrics.writeReport(this);
+                Log.i(TAG, "metrics report: " + file);
+                message = "Сохранено: " + file;
+            } catch (Exception e) {
+                Log.e(TAG, "metrics report error", e);
+                message = "Ошибка: " + e;
+            }
+            final String result = message;
+            runOnUiThread(() -> Toast.makeText(this, result, Toast.LENGTH_LONG).show());
+        }, "metrics-report").start();
+    }
+}
@@ -0,0 +1,303 @@
+package com.example.tasklist;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Сервер синхронизации в памяти на loopback-сокете — для замеров и проверки TaskSync
+ * через настоящий HttpURLConnection. HTTP/1.1 в минимальном объёме: POST с Content-Length,
+ * одно соединение — один запрос (Connection: close). Только в отладочной сборке: открытый HTTP
+ * на loopback разрешён debug-манифестом (network_security_config), в релиз ни то ни другое не попадает.
+ * <p>
+ * Каждое поле задачи хранит значение, время изменения (для слияния «побеждает более позднее»),
+ * номер изменения на сервере и устройство-автора. pull отдаёт поля с номером после курсора,
+ * кроме принятых от самого запрашивающего. Отклонённое при push поле получает новый номер
+ * без автора, чтобы отправитель забрал серверное значение. Удаление побеждает правки.
+ */
+public class MockSyncServer {
+    private static final String TAG = "MockSyncServer";
+
+    private final Map<String, Record> records = new HashMap<>();
+    private final TreeMap<Long, Record> bySeq = new TreeMap<>();
+    private long seq = 0;
+    private int failNext = 0;
+    private int requests = 0;
+
+    private ServerSocket socket;
+    private Thread acceptThread;
+
+    // Значение одного поля на сервере
+    private static final class Field {
+        Object value;
+        long at;          // время изменения на устройстве, мс
+        long seq;         // номер изменения на сервере
+        String origin;    // устройство, от которого принято значение; "" — отдавать всем
+    }
+
+    private static final class Record {
+        final String uid;
+        long createdAt;
+        long seq;
+        final Field title = new Field();
+        final Field desc = new Field();
+        final Field done = new Field();
+        final Field due = new Field();
+        boolean deleted;
+        String deleteOrigin;
+
+        Record(String uid) {
+            this.uid = uid;
+        }
+    }
+
+    /**
+     * Запускает сервер на свободном порту 127.0.0.1.
+     */
+    public synchronized void start() throws IOException {
+        if (socket != null) return;
+        socket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        ServerSocket server = socket;
+        acceptThread = new Thread(() -> acceptLoop(server), "mock-sync-server");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    public void stop() {
+        ServerSocket server;
+        synchronized (this) {
+            server = socket;
+            socket = null;
+        }
+        if (server == null) return;
+        try {
+            server.close();
+        } catch (IOException ignored) {
+        }
+        try {
+            acceptThread.join(1_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public synchronized String getBaseUrl() {
+        return "http://127.0.0.1:" + socket.getLocalPort();
+    }
+
+    // Следующие n запросов получат 503 — проверка повторов
+    public synchronized void failNext(int n) {
+        failNext = n;
+    }
+
+    public synchronized int getRequestCount() {
+        return requests;
+    }
+
+    private void acceptLoop(ServerSocket server) {
+        while (true) {
+            Socket client;
+            try {
+                client = server.accept();
+            } catch (IOException e) {
+                return; // сокет закрыт в stop()
+            }
+            try (Socket s = client) {
+                handle(s);
+            } catch (IOException | JSONException e) {
+                Log.w(TAG, "request failed", e);
+            }
+        }
+    }
+
+    // ---------- HTTP ----------
+
+    private void handle(Socket s) throws IOException, JSONException {
+        InputStream in = new BufferedInputStream(s.getInputStream());
+        String requestLine = readLine(in);
+        if (requestLine == null) return;
+        String[] parts = requestLine.split(" ");
+        int length = 0;
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                length = Integer.parseInt(line.substring(colon + 1).trim());
+            }
+        }
+        byte[] body = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = in.read(body, read, length - read);
+            if (n < 0) throw new IOException("Unexpected end of request body");
+            read += n;
+        }
+
+        OutputStream out = s.getOutputStream();
+        boolean fail;
+        synchronized (this) {
+            requests++;
+            fail = failNext > 0;
+            if (fail) failNext--;
+        }
+        if (fail) {
+            respond(out, 503, "Service Unavailable", new byte[0]);
+            return;
+        }
+        if (parts.length < 2 || !"POST".equals(parts[0])) {
+            respond(out, 405, "Method Not Allowed", new byte[0]);
+            return;
+        }
+        JSONObject request = new JSONObject(TaskSync.gunzip(body));
+        JSONObject response;
+        if (TaskSync.PATH_PUSH.equals(parts[1])) {
+            response = push(request);
+        } else if (TaskSync.PATH_PULL.equals(parts[1])) {
+            response = pull(request);
+        } else {
+            respond(out, 404, "Not Found", new byte[0]);
+            return;
+        }
+        respond(out, 200, "OK", TaskSync.gzip(response.toString()));
+    }
+
+    private static void respond(OutputStream out, int code, String reason, byte[] body) throws IOException {
+        String head = String.format(Locale.ROOT, "HTTP/1.1 %d %s\r\nContent-Type: application/json\r\n"
+                + (body.length > 0 ? "Content-Encoding: gzip\r\n" : "")
+                + "Content-Length: %d\r\nConnection: close\r\n\r\n", code, reason, body.length);
+        out.write(head.getBytes(StandardCharsets.US_ASCII));
+        out.write(body);
+        out.flush();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (b != '\r') line.write(b);
+        }
+        if (b == -1 && line.size() == 0) return null;
+        return line.toString("US-ASCII");
+    }
+
+    // ---------- синхронизация ----------
+
+    private synchronized JSONObject push(JSONObject request) throws JSONException {
+        String device = request.getString("device");
+        JSONArray changes = request.getJSONArray("changes");
+        int accepted = 0;
+        for (int i = 0; i < changes.length(); i++) {
+            if (merge(device, SyncChange.fromJson(changes.getJSONObject(i)))) accepted++;
+        }
+        return new JSONObject().put("accepted", accepted);
+    }
+
+    // true — изменение принято целиком
+    private boolean merge(String device, SyncChange ch) {
+        Record r = records.get(ch.uid);
+        if (r == null) {
+            r = new Record(ch.uid);
+            r.createdAt = ch.createdAt;
+            records.put(ch.uid, r);
+        } else if (r.deleted) {
+            return ch.deleted;
+        }
+        long next = seq + 1;
+        boolean all = true;
+        boolean changed = false;
+        if (ch.deleted) {
+            r.deleted = true;
+            r.deleteOrigin = device;
+            changed = true;
+        } else {
+            if (ch.has(SyncChange.FIELD_TITLE)) {
+                all &= mergeField(r.title, ch.title, ch.titleAt, device, next);
+                changed = true;
+            }
+            if (ch.has(SyncChange.FIELD_DESC)) {
+                all &= mergeField(r.desc, ch.description, ch.descAt, device, next);
+                changed = true;
+            }
+            if (ch.has(SyncChange.FIELD_DONE)) {
+                all &= mergeField(r.done, ch.done, ch.doneAt, device, next);
+                changed = true;
+            }
+            if (ch.has(SyncChange.FIELD_DUE)) {
+                all &= mergeField(r.due, ch.due, ch.dueAt, device, next);
+                changed = true;
+            }
+        }
+        if (changed) {
+            seq = next;
+            bySeq.remove(r.seq);
+            r.seq = next;
+            bySeq.put(next, r);
+        }
+        return all;
+    }
+
+    // Новое значение принимается, если оно не старше серверного; иначе серверное поле
+    // помечается для отдачи всем, включая отправителя
+    private static boolean mergeField(Field f, Object value, long at, String device, long seq) {
+        f.seq = seq;
+        if (at >= f.at) {
+            f.value = value;
+            f.at = at;
+            f.origin = device;
+            return true;
+        }
+        f.origin = "";
+        return false;
+    }
+
+    private synchronized JSONObject pull(JSONObject request) throws JSONException {
+        String device = request.getString("device");
+        long since = request.getLong("since");
+        int limit = request.getInt("limit");
+        JSONArray changes = new JSONArray();
+        long cursor = since;
+        int scanned = 0;
+        Iterator<Record> it = bySeq.tailMap(since, false).values().iterator();
+        while (it.hasNext() && scanned < limit) {
+            Record r = it.next();
+            scanned++;
+            cursor = r.seq;
+            SyncChange ch = forDevice(r, device, since);
+            if (ch != null) changes.put(ch.toJson());
+        }
+        return new JSONObject().put("changes", changes).put("cursor", cursor).put("more", it.hasNext());
+    }
+
+    private static SyncChange forDevice(Record r, String device, long since) {
+        if (r.deleted) return device.equals(r.deleteOrigin) ? null : SyncChange.tombstone(r.uid);
+        int fields = (visible(r.title, device, since) ? SyncChange.FIELD_TITLE : 0)
+                | (visible(r.desc, device, since) ? SyncChange.FIELD_DESC : 0)
+                | (visible(r.done, device, since) ? SyncChange.FIELD_DONE : 0)
+                | (visible(r.due, device, since) ? SyncChange.FIELD_DUE : 0);
+        if (fields == 0) return null;
+        return new SyncChange(r.uid, false, fields, (String) r.title.value, (String) r.desc.value,
+                Boolean.TRUE.equals(r.done.value), r.due.value != null ? (Long) r.due.value : 0, r.createdAt,
+                r.title.at, r.desc.at, r.done.at, r.due.at);
+    }
+
+    private static boolean visible(Field f, String device, long since) {
+        return f.seq > since && !device.equals(f.origin);
+    }
+}
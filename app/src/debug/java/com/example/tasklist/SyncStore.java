@@ -0,0 +1,275 @@
+package com.example.tasklist;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static com.example.tasklist.DBHelper.COL_CREATED;
+import static com.example.tasklist.DBHelper.COL_DESC;
+import static com.example.tasklist.DBHelper.COL_DONE;
+import static com.example.tasklist.DBHelper.COL_DUE;
+import static com.example.tasklist.DBHelper.COL_TITLE;
+import static com.example.tasklist.DBHelper.COL_UID;
+import static com.example.tasklist.DBHelper.COL_UPDATED;
+import static com.example.tasklist.DBHelper.SYNC_LOG_TABLE;
+import static com.example.tasklist.DBHelper.SYNC_STATE_TABLE;
+import static com.example.tasklist.DBHelper.TABLE;
+
+/**
+ * Локальная сторона синхронизации поверх таблиц DBHelper: журнал изменений (sync_log),
+ * состояние (sync_state: id устройства, курсор pull) и применение изменений с сервера.
+ * Методы блокирующие — вызывать из фонового потока (см. TaskSync).
+ */
+public class SyncStore {
+    static final String KEY_DEVICE = "device_id";
+    static final String KEY_PULL_CURSOR = "pull_cursor";
+
+    private final DBHelper dbHelper;
+
+    public SyncStore(DBHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    public String getState(String key) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        try (Cursor c = db.rawQuery("SELECT value FROM " + SYNC_STATE_TABLE + " WHERE key = ?", new String[]{key})) {
+            return c.moveToFirst() ? c.getString(0) : null;
+        }
+    }
+
+    public void setState(String key, String value) {
+        setState(dbHelper.getWritableDatabase(), key, value);
+    }
+
+    private static void setState(SQLiteDatabase db, String key, String value) {
+        db.execSQL("INSERT OR REPLACE INTO " + SYNC_STATE_TABLE + " (key, value) VALUES (?, ?)",
+                new Object[]{key, value});
+    }
+
+    public String getDeviceId() {
+        String id = getState(KEY_DEVICE);
+        if (id == null) {
+            id = UUID.randomUUID().toString();
+            setState(KEY_DEVICE, id);
+        }
+        return id;
+    }
+
+    public long getPullCursor() {
+        String v = getState(KEY_PULL_CURSOR);
+        return v != null ? Long.parseLong(v) : 0;
+    }
+
+    /**
+     * Включает журнал изменений. При первом включении все существующие задачи попадают в журнал
+     * как новые — первая отправка выгрузит их на сервер. Повторный вызов ничего не делает.
+     * Сначала дожидается фоновых миграций: у задач, до которых проход ещё не дошёл, нет uid,
+     * а журнал требует его (uid NOT NULL).
+     */
+    public void enable() {
+        DataMigrations.runPending(dbHelper, Integer.MAX_VALUE);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            if (DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + SYNC_STATE_TABLE + " WHERE key = ?",
+                    new String[]{DBHelper.SYNC_ENABLED_KEY}) == 0) {
+                setState(db, DBHelper.SYNC_ENABLED_KEY, "1");
+                db.execSQL("INSERT INTO " + SYNC_LOG_TABLE + " (uid, op, fields, changed_at) SELECT " + COL_UID
+                        + ", " + SyncChange.OP_UPSERT + ", " + SyncChange.FIELD_ALL + ", " + COL_UPDATED
+                        + " FROM " + TABLE + " ORDER BY " + COL_UPDATED);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public long getPendingCount() {
+        return DatabaseUtils.queryNumEntries(dbHelper.getReadableDatabase(), SYNC_LOG_TABLE);
+    }
+
+    /**
+     * Изменения из не более чем limit строк журнала после afterSeq, схлопнутые по задаче:
+     * по каждому полю — время последнего изменения, значения — текущие из tasks.
+     * Возвращает seq последней вошедшей строки журнала (afterSeq, если журнал пуст).
+     */
+    public long readPending(long afterSeq, int limit, List<SyncChange> out) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        String after = String.valueOf(afterSeq);
+        long maxSeq = DatabaseUtils.longForQuery(db, "SELECT ifnull(MAX(seq), " + afterSeq + ") FROM (SELECT seq"
+                + " FROM " + SYNC_LOG_TABLE + " WHERE seq > ? ORDER BY seq LIMIT " + limit + ")", new String[]{after});
+        if (maxSeq == afterSeq) return afterSeq;
+
+        String sql = "SELECT l.uid, MAX(l.op = " + SyncChange.OP_DELETE + ") OR t." + COL_UID + " IS NULL, "
+                + fieldTime(SyncChange.FIELD_TITLE) + ", " + fieldTime(SyncChange.FIELD_DESC) + ", "
+                + fieldTime(SyncChange.FIELD_DONE) + ", " + fieldTime(SyncChange.FIELD_DUE) + ", t." + COL_TITLE
+                + ", t." + COL_DESC + ", t." + COL_DONE + ", t." + COL_DUE + ", t." + COL_CREATED
+                + " FROM " + SYNC_LOG_TABLE + " l LEFT JOIN " + TABLE + " t ON t." + COL_UID + " = l.uid"
+                + " WHERE l.seq > ? AND l.seq <= ? GROUP BY l.uid";
+        try (Cursor c = db.rawQuery(sql, new String[]{after, String.valueOf(maxSeq)})) {
+            while (c.moveToNext()) {
+                String uid = c.getString(0);
+                if (c.getInt(1) == 1) {
+                    // удалена (в этом пакете или позже) — отправляем надгробие
+                    out.add(SyncChange.tombstone(uid));
+                    continue;
+                }
+                int fields = (c.isNull(2) ? 0 : SyncChange.FIELD_TITLE) | (c.isNull(3) ? 0 : SyncChange.FIELD_DESC)
+                        | (c.isNull(4) ? 0 : SyncChange.FIELD_DONE) | (c.isNull(5) ? 0 : SyncChange.FIELD_DUE);
+                out.add(new SyncChange(uid, false, fields, c.getString(6), c.getString(7), c.getInt(8) == 1,
+                        c.isNull(9) ? 0 : c.getLong(9), c.getLong(10),
+                        c.getLong(2), c.getLong(3), c.getLong(4), c.getLong(5)));
+            }
+        }
+        return maxSeq;
+    }
+
+    private static String fieldTime(int field) {
+        return "MAX(CASE WHEN l.fields & " + field + " THEN l.changed_at END)";
+    }
+
+    // Сервер принял изменения до maxSeq включительно — их строки журнала больше не нужны
+    public void ackPushed(long maxSeq) {
+        dbHelper.getWritableDatabase().execSQL("DELETE FROM " + SYNC_LOG_TABLE + " WHERE seq <= ?",
+                new Object[]{maxSeq});
+    }
+
+    /**
+     * Применяет изменения с сервера и сдвигает курсор pull — одной транзакцией, чтобы курсор
+     * не ушёл вперёд непримененных изменений. Поле, которое здесь изменено позже и ещё не отправлено,
+     * не перезаписывается; задача, удалённая здесь, не восстанавливается. Собственные строки журнала,
+     * которые записали триггеры при применении, удаляются: это не локальные изменения.
+     * Возвращает число изменённых задач.
+     */
+    public int applyRemote(List<SyncChange> changes, long cursor) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        int applied = 0;
+        db.beginTransaction();
+        try {
+            long lastLocalSeq = DatabaseUtils.longForQuery(db, "SELECT ifnull(MAX(seq), 0) FROM " + SYNC_LOG_TABLE,
+                    null);
+            boolean hasLocal = lastLocalSeq > 0;
+            SQLiteStatement findId = db.compileStatement("SELECT id FROM " + TABLE + " WHERE " + COL_UID + " = ?");
+            SQLiteStatement delete = db.compileStatement("DELETE FROM " + TABLE + " WHERE " + COL_UID + " = ?");
+            SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE + " (" + COL_UID + ", " + COL_TITLE
+                    + ", " + COL_DESC + ", " + COL_DONE + ", " + COL_DUE + ", " + COL_CREATED + ", " + COL_UPDATED
+                    + ") VALUES (?, ?, ?, ?, ?, ?, ?)");
+            try {
+                for (SyncChange ch : changes) {
+                    LocalChanges local = hasLocal ? localChanges(db, ch.uid, lastLocalSeq) : LocalChanges.NONE;
+                    if (local.deleted) continue; // надгробие уйдёт на сервер со следующей отправкой
+                    if (ch.deleted) {
+                        delete.bindString(1, ch.uid);
+                        applied += delete.executeUpdateDelete();
+                        continue;
+                    }
+                    findId.bindString(1, ch.uid);
+                    long id;
+                    try {
+                        id = findId.simpleQueryForLong();
+                    } catch (SQLiteDoneException e) {
+                        id = -1;
+                    }
+                    if (id == -1) {
+                        insert.bindString(1, ch.uid);
+                        insert.bindString(2, ch.title != null ? ch.title : "");
+                        if (ch.description != null) insert.bindString(3, ch.description);
+                        else insert.bindNull(3);
+                        insert.bindLong(4, ch.done ? 1 : 0);
+                        if (ch.due > 0) insert.bindLong(5, ch.due);
+                        else insert.bindNull(5);
+                        insert.bindLong(6, ch.createdAt);
+                        insert.bindLong(7, ch.changedAt());
+                        insert.executeInsert();
+                        applied++;
+                    } else if (update(db, id, ch, local)) {
+                        applied++;
+                    }
+                }
+            } finally {
+                findId.close();
+                delete.close();
+                insert.close();
+            }
+            db.execSQL("DELETE FROM " + SYNC_LOG_TABLE + " WHERE seq > ?", new Object[]{lastLocalSeq});
+            setState(db, KEY_PULL_CURSOR, String.valueOf(cursor));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (applied > 0) dbHelper.onBulkWrite();
+        return applied;
+    }
+
+    // Обновляет поля, в которых серверное изменение не старше неотправленного локального
+    private static boolean update(SQLiteDatabase db, long id, SyncChange ch, LocalChanges local) {
+        StringBuilder set = new StringBuilder();
+        Object[] args = new Object[6];
+        int n = 0;
+        long changedAt = 0;
+        if (ch.has(SyncChange.FIELD_TITLE) && ch.titleAt >= local.titleAt) {
+            set.append(COL_TITLE).append(" = ?, ");
+            args[n++] = ch.title != null ? ch.title : "";
+            changedAt = Math.max(changedAt, ch.titleAt);
+        }
+        if (ch.has(SyncChange.FIELD_DESC) && ch.descAt >= local.descAt) {
+            set.append(COL_DESC).append(" = ?, ");
+            args[n++] = ch.description;
+            changedAt = Math.max(changedAt, ch.descAt);
+        }
+        if (ch.has(SyncChange.FIELD_DONE) && ch.doneAt >= local.doneAt) {
+            set.append(COL_DONE).append(" = ?, ");
+            args[n++] = ch.done ? 1 : 0;
+            changedAt = Math.max(changedAt, ch.doneAt);
+        }
+        if (ch.has(SyncChange.FIELD_DUE) && ch.dueAt >= local.dueAt) {
+            set.append(COL_DUE).append(" = ?, ");
+            args[n++] = ch.due > 0 ? ch.due : null;
+            changedAt = Math.max(changedAt, ch.dueAt);
+        }
+        if (n == 0) return false;
+        set.append(COL_UPDATED).append(" = max(ifnull(").append(COL_UPDATED).append(", 0), ?)");
+        args[n++] = changedAt;
+        args[n++] = id;
+        db.execSQL("UPDATE " + TABLE + " SET " + set + " WHERE id = ?", Arrays.copyOf(args, n));
+        return true;
+    }
+
+    private static LocalChanges localChanges(SQLiteDatabase db, String uid, long lastLocalSeq) {
+        try (Cursor c = db.rawQuery("SELECT MAX(op = " + SyncChange.OP_DELETE + "), "
+                + "MAX(CASE WHEN fields & " + SyncChange.FIELD_TITLE + " THEN changed_at END), "
+                + "MAX(CASE WHEN fields & " + SyncChange.FIELD_DESC + " THEN changed_at END), "
+                + "MAX(CASE WHEN fields & " + SyncChange.FIELD_DONE + " THEN changed_at END), "
+                + "MAX(CASE WHEN fields & " + SyncChange.FIELD_DUE + " THEN changed_at END) "
+                + "FROM " + SYNC_LOG_TABLE + " WHERE uid = ? AND seq <= ?",
+                new String[]{uid, String.valueOf(lastLocalSeq)})) {
+            if (!c.moveToFirst() || c.isNull(0)) return LocalChanges.NONE;
+            return new LocalChanges(c.getInt(0) == 1, c.getLong(1), c.getLong(2), c.getLong(3), c.getLong(4));
+        }
+    }
+
+    // Неотправленные локальные изменения задачи: время по полям (0 — поле не менялось)
+    private static final class LocalChanges {
+        static final LocalChanges NONE = new LocalChanges(false, 0, 0, 0, 0);
+
+        final boolean deleted;
+        final long titleAt;
+        final long descAt;
+        final long doneAt;
+        final long dueAt;
+
+        LocalChanges(boolean deleted, long titleAt, long descAt, long doneAt, long dueAt) {
+            this.deleted = deleted;
+            this.titleAt = titleAt;
+            this.descAt = descAt;
+            this.doneAt = doneAt;
+            this.dueAt = dueAt;
+        }
+    }
+}
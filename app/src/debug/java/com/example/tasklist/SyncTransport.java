@@ -0,0 +1,32 @@
+package com.example.tasklist;
+
+import java.io.IOException;
+
+/**
+ * Канал до сервера синхронизации: один POST — один круг запрос/ответ.
+ * Тела запроса и ответа — JSON, сжатый gzip (сжатие делает TaskSync).
+ */
+public interface SyncTransport {
+
+    byte[] post(String path, byte[] gzipBody) throws IOException;
+
+    /**
+     * Ответ сервера с кодом ошибки. 5xx и 429 — временные, запрос стоит повторить.
+     */
+    class StatusException extends IOException {
+        private final int code;
+
+        public StatusException(int code, String message) {
+            super("HTTP " + code + ": " + message);
+            this.code = code;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public boolean isRetryable() {
+            return code >= 500 || code == 429;
+        }
+    }
+}
@@ -0,0 +1,635 @@
+package com.example.tasklist;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.widget.FrameLayout;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Замеры горячих путей на отдельной БД (данные пользователя не затрагиваются):
+ * вставка, загрузка списка на 1k/10k/100k задач (и на 10k с длинными заметками), поиск, смена статуса, открытие формы задачи,
+ * перевзвод напоминаний при 1k/10k/50k задач со сроком,
+ * экспорт/импорт, синхронизация двух БД через локальный сервер, обновление БД первой версии, привязка строки
+ * и параллельные чтение/запись с WAL и без. Результат — JSON для сравнения между сборками.
+ * Запускать из фонового потока.
+ */
+public class TaskBenchmark {
+    private static final String BENCH_DB = "tasks_bench.db";
+    private static final String PEER_DB = "tasks_bench_peer.db";
+    private static final String V1_DB = "tasks_bench_v1.db";
+    private static final int[] LIST_SIZES = {1_000, 10_000, 100_000};
+    private static final int[] REMINDER_SIZES = {1_000, 10_000, 50_000};
+    private static final int FILL_BATCH = 10_000;
+
+    public interface Progress {
+        void onProgress(String step);
+    }
+
+    private final Context context;
+    private final Progress progress;
+    private final JSONArray results = new JSONArray();
+
+    public TaskBenchmark(Context context, Progress progress) {
+        this.context = context;
+        this.progress = progress;
+    }
+
+    public JSONObject run() throws JSONException {
+        for (int size : LIST_SIZES) {
+            benchList(size);
+        }
+        benchLongNotes(10_000, 4_000);
+        benchWrites(1_000);
+        benchScreenOpen(20);
+        for (int size : REMINDER_SIZES) {
+            benchReminders(size);
+        }
+        benchTransfer(100_000);
+        benchSync(10_000);
+        benchMigration(100_000);
+        benchBinding(1_000);
+        benchConcurrent(false, 3_000);
+        benchConcurrent(true, 3_000);
+        context.deleteDatabase(BENCH_DB);
+
+        JSONObject report = new JSONObject();
+        report.put("timestamp", System.currentTimeMillis());
+        report.put("device", Build.MANUFACTURER + " " + Build.MODEL);
+        report.put("sdk", Build.VERSION.SDK_INT);
+        report.put("results", results);
+        return report;
+    }
+
+    /**
+     * Сохраняет отчёт в файл и возвращает его.
+     */
+    public static File writeReport(Context context, JSONObject report) throws IOException, JSONException {
+        File dir = context.getExternalFilesDir("benchmarks");
+        if (dir == null) dir = new File(context.getFilesDir(), "benchmarks");
+        if (!dir.exists() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        File file = new File(dir, "bench-" + report.getLong("timestamp") + ".json");
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            w.write(report.toString(2));
+        }
+        return file;
+    }
+
+    // ---------- сценарии ----------
+
+    private void benchList(int size) throws JSONException {
+        DBHelper db = freshDb(true);
+        try {
+            progress.onProgress("insert " + size);
+            long start = SystemClock.elapsedRealtimeNanos();
+            fill(db, size);
+            record("insert_batch", size, new double[]{msSince(start)});
+
+            progress.onProgress("list " + size);
+            record("list_full", size, measure(3, () -> db.getTasks(null, false, true)));
+            record("list_full_snapshot", size, measure(3, () -> db.getTaskSnapshot(null, false, true, null)));
+            TaskSnapshot snapshot = db.getTaskSnapshot(null, false, true, null);
+            record("resort_snapshot", size, measure(5, () -> snapshot.sorted(true, false)));
+            record("search_prefix_in_memory", size, measure(5, () ->
+                    TaskView.apply(snapshot, null, "пок", false, true)));
+            if (!db.verifyOrderIndexes()) throw new IllegalStateException("task order not served by index");
+            record("list_first_page", size, measure(20, () ->
+                    db.getTasksPage(null, false, true, null, TaskPager.PAGE_SIZE, null)));
+            TaskSnapshot first = db.getTasksPage(null, false, true, null, TaskPager.PAGE_SIZE, null);
+            Task key = first.toTask(first.size() - 1);
+            record("list_next_page", size, measure(20, () ->
+                    db.getTasksPage(null, false, true, key, TaskPager.PAGE_SIZE, null)));
+
+            progress.onProgress("search " + size);
+            record("search_rare", size, measure(10, () -> db.getTasks("задача 77", false, true)));
+            record("search_prefix", size, measure(10, () -> db.getTasks("пок", false, true)));
+
+            // счётчики заголовка: строка таблицы статистики против пересчёта по таблице
+            // (первая проверка — до замеров: verifyStats сама исправляет расхождение)
+            if (!db.verifyStats()) throw new IllegalStateException("task stats out of sync after fill");
+            record("stats_read", size, measure(20, db::getStats));
+            record("stats_verify_scan", size, measure(3, db::verifyStats));
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Те же загрузки списка, что в benchList, но у каждой задачи заметка noteChars символов:
+     * список читает только начало описания, поэтому время должно быть близко к list_* на size задач.
+     */
+    private void benchLongNotes(int size, int noteChars) throws JSONException {
+        DBHelper db = freshDb(true);
+        try {
+            progress.onProgress("list " + size + ", notes " + noteChars);
+            fill(db, size, noteChars);
+            record("list_full_long_notes", size, measure(3, () -> db.getTasks(null, false, true)));
+            record("list_full_snapshot_long_notes", size, measure(3, () ->
+                    db.getTaskSnapshot(null, false, true, null)));
+            record("list_first_page_long_notes", size, measure(20, () ->
+                    db.getTasksPage(null, false, true, null, TaskPager.PAGE_SIZE, null)));
+            long[] next = {0};
+            // полный текст читается по id; id каждый раз новый, чтобы не попасть в кэш задач
+            record("open_long_note", 1, measure(20, () -> db.getTaskById(++next[0])));
+        } finally {
+            db.close();
+        }
+    }
+
+    private void benchWrites(int count) throws JSONException {
+        DBHelper db = freshDb(true);
+        try {
+            progress.onProgress("single writes");
+            long start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < count; i++) {
+                db.addTask(new Task("Задача " + i, "описание", false));
+            }
+            record("insert_single", count, new double[]{msSince(start)});
+
+            long[] ids = new long[count];
+            for (int i = 0; i < count; i++) ids[i] = i + 1;
+            start = SystemClock.elapsedRealtimeNanos();
+            for (long id : ids) db.updateTaskStatus(id, true);
+            record("toggle_single", count, new double[]{msSince(start)});
+
+            start = SystemClock.elapsedRealtimeNanos();
+            db.updateTaskStatus(ids, false);
+            record("toggle_batch", count, new double[]{msSince(start)});
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Открытие формы редактирования: задача читается по id. Раньше каждый экран создавал
+     * свой DBHelper и открывал БД заново — сравнение с общим на процесс соединением (TaskDatabase).
+     */
+    private void benchScreenOpen(int opens) throws JSONException {
+        progress.onProgress("screen open: own vs shared db");
+        DBHelper db = freshDb(true);
+        try {
+            fill(db, 1_000);
+            long[] next = {0};
+            // id каждый раз новый, чтобы чтение шло в БД, а не в кэш задач
+            record("screen_open_own_db", opens, measure(opens, () -> {
+                DBHelper own = new DBHelper(context, BENCH_DB, true);
+                try {
+                    return own.getTaskById(++next[0]);
+                } finally {
+                    own.close();
+                }
+            }));
+            record("screen_open_shared_db", opens, measure(opens, () -> db.getTaskById(++next[0])));
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Напоминания: взведён один будильник на ближайший срок, поэтому перевзвод, срабатывание
+     * и список «скоро срок» — запросы по частичному индексу срока, и их время не должно расти
+     * с числом задач со сроком (сравнить reminder_* между размерами). Будильник — заглушка:
+     * считается только обращение к AlarmManager, а не его работа.
+     */
+    private void benchReminders(int size) throws JSONException {
+        progress.onProgress("reminders " + size);
+        DBHelper db = freshDb(true);
+        SharedPreferences prefs = context.getSharedPreferences("reminders_bench", Context.MODE_PRIVATE);
+        prefs.edit().clear().commit();
+        try {
+            fill(db, size);
+            // у каждой задачи срок: через минуту, две, ... (выполненные в индекс не попадают)
+            long now = System.currentTimeMillis() / 1000L;
+            db.getWritableDatabase().execSQL("UPDATE " + DBHelper.TABLE + " SET " + DBHelper.COL_DUE + " = ? + "
+                    + DBHelper.COL_ID + " * 60", new Object[]{now});
+            String plan = db.explainDueTasks();
+            if (!plan.contains(DBHelper.IDX_DUE)) throw new IllegalStateException("due query not indexed: " + plan);
+
+            int[] alarmCalls = {0};
+            ReminderScheduler scheduler = new ReminderScheduler(db, new ReminderScheduler.Alarm() {
+                @Override
+                public void set(long triggerAtMillis) {
+                    alarmCalls[0]++;
+                }
+
+                @Override
+                public void cancel() {
+                    alarmCalls[0]++;
+                }
+            }, prefs);
+
+            record("reminder_next_due", size, measure(50, () -> db.getNextDueAt(now)));
+            record("reminder_reschedule", size, measure(50, () -> {
+                scheduler.forgetArmed();
+                return scheduler.reschedule();
+            }));
+            // каждое срабатывание — на следующий срок: одна задача и перевзвод
+            long[] at = {now};
+            record("reminder_fire", size, measure(50, () -> scheduler.fire(at[0] += 60)));
+            record("due_soon_query", size, measure(20, () ->
+                    db.getDueTasks(0, now + 7 * 24 * 3600, 100)));
+            if (alarmCalls[0] == 0) throw new IllegalStateException("reminder alarm was never armed");
+        } finally {
+            prefs.edit().clear().commit();
+            db.close();
+        }
+    }
+
+    // Экспорт в оба формата и импорт обратно через временный файл
+    private void benchTransfer(int size) throws JSONException {
+        progress.onProgress("export/import " + size);
+        DBHelper db = freshDb(true);
+        File file = new File(context.getCacheDir(), "bench-transfer.tmp");
+        try {
+            fill(db, size);
+            TaskTransfer transfer = new TaskTransfer(db);
+            for (TaskTransfer.Format format : TaskTransfer.Format.values()) {
+                String suffix = format.name().toLowerCase(Locale.ROOT);
+                long start = SystemClock.elapsedRealtimeNanos();
+                try (OutputStream out = new FileOutputStream(file)) {
+                    transfer.export(out, format, null);
+                }
+                record("export_" + suffix, size, new double[]{msSince(start)});
+                JSONObject o = new JSONObject();
+                o.put("name", "export_" + suffix + "_bytes");
+                o.put("rows", size);
+                o.put("bytes", file.length());
+                results.put(o);
+
+                start = SystemClock.elapsedRealtimeNanos();
+                try (InputStream in = new FileInputStream(file)) {
+                    transfer.importTasks(in, null);
+                }
+                record("import_" + suffix, size, new double[]{msSince(start)});
+            }
+        } catch (IOException e) {
+            progress.onProgress("export/import failed: " + e);
+        } finally {
+            db.close();
+            file.delete();
+        }
+    }
+
+    /**
+     * Обновление БД первой версии (без created_at, FTS, uid): открытие выполняет изменения схемы
+     * и заполняет created_at, остальные проходы по строкам идут порциями (DataMigrations). Проверяется и продолжение после
+     * закрытия БД посреди прохода, и запись в ещё не проиндексированные строки во время прохода.
+     */
+    private void benchMigration(int size) throws JSONException {
+        progress.onProgress("upgrade v1 " + size);
+        createV1Db(size);
+        DBHelper db = new DBHelper(context, V1_DB, true);
+        try {
+            long start = SystemClock.elapsedRealtimeNanos();
+            db.getWritableDatabase();
+            record("upgrade_v1_open", size, new double[]{msSince(start)});
+            record("upgrade_v1_first_page_pending", size, measure(5, () ->
+                    db.getTasksPage(null, false, true, null, TaskPager.PAGE_SIZE, null)));
+
+            // часть прохода (начало FTS), затем «гибель процесса»:
+            // БД закрывается, курсоры остаются в schema_migrations
+            DataMigrations.runPending(db, 70);
+            db.close();
+            DBHelper reopened = new DBHelper(context, V1_DB, true);
+            try {
+                if (DataMigrations.pendingCount(reopened) == 0) {
+                    throw new IllegalStateException("migrations finished before the interruption point");
+                }
+                // запись во время прохода: id 1 и 2 индексируются последними
+                reopened.updateTask(new Task(1, "Переименована", "после обновления", false));
+                reopened.deleteTask(2);
+                reopened.addTask(new Task("Добавлена", "во время миграции", false));
+
+                start = SystemClock.elapsedRealtimeNanos();
+                boolean done = DataMigrations.runPending(reopened, Integer.MAX_VALUE);
+                record("upgrade_v1_background", size, new double[]{msSince(start)});
+                verifyMigrated(reopened, done, size);
+            } finally {
+                reopened.close();
+            }
+        } finally {
+            db.close();
+            context.deleteDatabase(V1_DB);
+        }
+    }
+
+    // Схема версии 1: id, title, description, done
+    private void createV1Db(int size) {
+        context.deleteDatabase(V1_DB);
+        SQLiteDatabase v1 = SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath(V1_DB), null);
+        try {
+            v1.execSQL("CREATE TABLE " + DBHelper.TABLE + " (" + DBHelper.COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + DBHelper.COL_TITLE + " TEXT NOT NULL, " + DBHelper.COL_DESC + " TEXT, "
+                    + DBHelper.COL_DONE + " INTEGER DEFAULT 0);");
+            SQLiteStatement insert = v1.compileStatement("INSERT INTO " + DBHelper.TABLE + " (" + DBHelper.COL_TITLE
+                    + ", " + DBHelper.COL_DESC + ", " + DBHelper.COL_DONE + ") VALUES (?, ?, ?)");
+            v1.beginTransaction();
+            try {
+                for (int i = 0; i < size; i++) {
+                    insert.bindString(1, "Задача " + i);
+                    insert.bindString(2, "описание " + i);
+                    insert.bindLong(3, i % 3 == 0 ? 1 : 0);
+                    insert.executeInsert();
+                }
+                v1.setTransactionSuccessful();
+            } finally {
+                v1.endTransaction();
+                insert.close();
+            }
+            v1.setVersion(1);
+        } finally {
+            v1.close();
+        }
+    }
+
+    private static void verifyMigrated(DBHelper db, boolean done, int size) {
+        SQLiteDatabase sql = db.getReadableDatabase();
+        long total = DatabaseUtils.queryNumEntries(sql, DBHelper.TABLE);
+        long missing = DatabaseUtils.queryNumEntries(sql, DBHelper.TABLE, DBHelper.COL_CREATED + " IS NULL OR "
+                + DBHelper.COL_UID + " IS NULL OR " + DBHelper.COL_UPDATED + " IS NULL");
+        long indexed = DatabaseUtils.longForQuery(sql, "SELECT COUNT(*) FROM " + DBHelper.FTS_TABLE + " WHERE "
+                + DBHelper.FTS_TABLE + " MATCH ?", new String[]{"задача*"});
+        long renamed = DatabaseUtils.longForQuery(sql, "SELECT COUNT(*) FROM " + DBHelper.FTS_TABLE + " WHERE "
+                + DBHelper.FTS_TABLE + " MATCH ?", new String[]{"переименована"});
+        if (!done || total != size || missing != 0 || indexed != size - 2 || renamed != 1 || !db.verifyStats()) {
+            throw new IllegalStateException("upgrade from v1 incomplete: done=" + done + " total=" + total
+                    + " missing=" + missing + " indexed=" + indexed + " renamed=" + renamed);
+        }
+    }
+
+    /**
+     * Дельта-синхронизация двух БД (два устройства) через MockSyncServer на loopback:
+     * первая выгрузка и загрузка, дельта после 100 смен статуса и 10 удалений, конфликт правок
+     * одной задачи на обоих устройствах (разные поля — сохраняются оба) и повторы после 503.
+     * Кроме времени пишутся число запросов и сжатые байты тел.
+     */
+    private void benchSync(int size) throws JSONException {
+        progress.onProgress("sync " + size);
+        DBHelper a = freshDb(true);
+        context.deleteDatabase(PEER_DB);
+        DBHelper b = new DBHelper(context, PEER_DB, true);
+        MockSyncServer server = new MockSyncServer();
+        try {
+            server.start();
+            SyncTransport transport = new HttpSyncTransport(server.getBaseUrl());
+            TaskSync syncA = new TaskSync(a, transport);
+            TaskSync syncB = new TaskSync(b, transport);
+            fill(a, size);
+
+            recordSync("sync_initial_push", size, syncA);
+            recordSync("sync_initial_pull", size, syncB);
+
+            progress.onProgress("sync delta");
+            long[] toggled = new long[100];
+            for (int i = 0; i < toggled.length; i++) toggled[i] = i * 50L + 1;
+            a.updateTaskStatus(toggled, true);
+            long[] deleted = new long[10];
+            for (int i = 0; i < deleted.length; i++) deleted[i] = i * 50L + 25;
+            a.deleteTasks(deleted);
+            recordSync("sync_delta_push", toggled.length + deleted.length, syncA);
+            recordSync("sync_delta_pull", toggled.length + deleted.length, syncB);
+
+            // конфликт: на A меняется заголовок, на B — статус той же задачи
+            progress.onProgress("sync conflict");
+            Task onA = findByTitle(a, "Задача 7");
+            Task onB = findByTitle(b, "Задача 7");
+            onA.setTitle("Задача 7 (изменена)");
+            a.updateTask(onA);
+            b.updateTaskStatus(onB.getId(), !onB.isDone());
+            syncA.sync();
+            syncB.sync();
+            syncA.sync();
+            Task mergedA = findByTitle(a, "Задача 7 (изменена)");
+            Task mergedB = findByTitle(b, "Задача 7 (изменена)");
+            if (mergedA.isDone() == onA.isDone() || mergedB.isDone() != mergedA.isDone()) {
+                throw new IllegalStateException("sync conflict merge lost a field");
+            }
+
+            progress.onProgress("sync retries");
+            a.updateTaskStatus(toggled, false);
+            server.failNext(2);
+            recordSync("sync_retry", toggled.length, syncA);
+
+            syncB.sync();
+            TaskStats statsA = a.getStats();
+            TaskStats statsB = b.getStats();
+            if (statsA == null || !statsA.equals(statsB)) {
+                throw new IllegalStateException("sync peers differ: " + (statsA != null ? statsA.getTotal() : -1)
+                        + " vs " + (statsB != null ? statsB.getTotal() : -1) + " tasks");
+            }
+        } catch (IOException e) {
+            progress.onProgress("sync failed: " + e);
+        } finally {
+            server.stop();
+            a.close();
+            b.close();
+            context.deleteDatabase(PEER_DB);
+        }
+    }
+
+    private void recordSync(String name, int rows, TaskSync sync) throws IOException, JSONException {
+        long start = SystemClock.elapsedRealtimeNanos();
+        TaskSync.Result r = sync.sync();
+        JSONObject o = record(name, rows, new double[]{msSince(start)});
+        o.put("changes", r.pushed + r.pulled);
+        o.put("round_trips", r.roundTrips);
+        o.put("retries", r.retries);
+        o.put("bytes_sent", r.bytesSent);
+        o.put("bytes_received", r.bytesReceived);
+    }
+
+    // Поиск по точному заголовку запросом к БД (не через кэш задач — он общий для двух БД)
+    private static Task findByTitle(DBHelper db, String title) {
+        for (Task t : db.getTasks(title, false, true)) {
+            if (t.getTitle().equals(title)) return t;
+        }
+        throw new IllegalStateException("task not found: " + title);
+    }
+
+    /**
+     * Привязка строк выполняется в главном потоке — как при прокрутке списка.
+     */
+    private void benchBinding(int binds) throws JSONException {
+        progress.onProgress("row binding");
+        DBHelper db = freshDb(true);
+        TaskRepository repository = new TaskRepository(db);
+        try {
+            fill(db, 200);
+            List<Task> tasks = db.getTasks(null, false, true);
+            final double[][] timings = new double[1][];
+            CountDownLatch done = new CountDownLatch(1);
+            new Handler(Looper.getMainLooper()).post(() -> {
+                try {
+                    TaskAdapter adapter = new TaskAdapter(context, repository, new TaskAdapter.Listener() {
+                        @Override
+                        public void onTaskClick(Task task) {
+                        }
+
+                        @Override
+                        public void onTaskLongClick(Task task) {
+                        }
+
+                        @Override
+                        public void onSelectionChanged(int selectedCount) {
+                        }
+
+                        @Override
+                        public void onStatusSaved() {
+                        }
+                    });
+                    adapter.submit(TaskSnapshot.of(tasks));
+                    TaskAdapter.ViewHolder holder = adapter.onCreateViewHolder(new FrameLayout(context), 0);
+                    timings[0] = measure(5, () -> {
+                        for (int i = 0; i < binds; i++) adapter.onBindViewHolder(holder, i % tasks.size());
+                        return null;
+                    });
+                } finally {
+                    done.countDown();
+                }
+            });
+            done.await();
+            if (timings[0] != null) record("bind_rows", binds, timings[0]);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            repository.close();
+        }
+    }
+
+    /**
+     * Два читателя листают первую страницу, один писатель переключает статусы.
+     * Сравнение rollback-журнала и WAL.
+     */
+    private void benchConcurrent(boolean wal, long durationMs) throws JSONException {
+        progress.onProgress("concurrent read/write, wal=" + wal);
+        DBHelper db = freshDb(wal);
+        try {
+            fill(db, 10_000);
+            AtomicLong reads = new AtomicLong();
+            AtomicLong writes = new AtomicLong();
+            long deadline = SystemClock.elapsedRealtime() + durationMs;
+
+            List<Thread> threads = new ArrayList<>();
+            for (int r = 0; r < 2; r++) {
+                threads.add(new Thread(() -> {
+                    while (SystemClock.elapsedRealtime() < deadline) {
+                        db.getTasksPage(null, false, true, null, TaskPager.PAGE_SIZE, null);
+                        reads.incrementAndGet();
+                    }
+                }, "bench-reader-" + r));
+            }
+            threads.add(new Thread(() -> {
+                Random random = new Random(42);
+                while (SystemClock.elapsedRealtime() < deadline) {
+                    db.updateTaskStatus(1 + random.nextInt(10_000), random.nextBoolean());
+                    writes.incrementAndGet();
+                }
+            }, "bench-writer"));
+            for (Thread t : threads) t.start();
+            for (Thread t : threads) t.join();
+
+            JSONObject o = new JSONObject();
+            o.put("name", wal ? "concurrent_rw_wal" : "concurrent_rw_rollback_journal");
+            o.put("rows", 10_000);
+            o.put("duration_ms", durationMs);
+            o.put("reads_per_sec", reads.get() * 1000 / durationMs);
+            o.put("writes_per_sec", writes.get() * 1000 / durationMs);
+            results.put(o);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            db.close();
+        }
+    }
+
+    // ---------- вспомогательное ----------
+
+    private DBHelper freshDb(boolean wal) {
+        context.deleteDatabase(BENCH_DB);
+        return new DBHelper(context, BENCH_DB, wal);
+    }
+
+    // Заполняет БД пакетами; created_at убывает, каждая третья задача выполнена
+    private static void fill(DBHelper db, int count) {
+        fill(db, count, 0);
+    }
+
+    // noteChars > 0 — к описанию дописывается текст, пока оно не станет не короче noteChars символов
+    private static void fill(DBHelper db, int count, int noteChars) {
+        String[] words = {"купить", "позвонить", "покрасить", "отчёт", "встреча", "починить", "прочитать"};
+        long now = System.currentTimeMillis() / 1000L;
+        List<Task> batch = new ArrayList<>(Math.min(count, FILL_BATCH));
+        for (int i = 0; i < count; i++) {
+            String desc = words[i % words.length] + " " + words[(i / 7) % words.length] + " №" + i;
+            if (noteChars > 0) {
+                StringBuilder note = new StringBuilder(noteChars + 16).append(desc);
+                while (note.length() < noteChars) note.append(' ').append(words[note.length() % words.length]);
+                desc = note.toString();
+            }
+            batch.add(new Task(-1, "Задача " + i, desc, i % 3 == 0, now - i));
+            if (batch.size() == FILL_BATCH || i == count - 1) {
+                db.addTasks(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private interface Op {
+        Object run();
+    }
+
+    private static double[] measure(int iterations, Op op) {
+        op.run(); // прогрев
+        double[] ms = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            op.run();
+            ms[i] = msSince(start);
+        }
+        return ms;
+    }
+
+    private static double msSince(long startNanos) {
+        return (SystemClock.elapsedRealtimeNanos() - startNanos) / 1_000_000.0;
+    }
+
+    private JSONObject record(String name, int rows, double[] ms) throws JSONException {
+        double[] sorted = ms.clone();
+        Arrays.sort(sorted);
+        JSONObject o = new JSONObject();
+        o.put("name", name);
+        o.put("rows", rows);
+        o.put("iterations", sorted.length);
+        o.put("ms_min", sorted[0]);
+        o.put("ms_median", sorted[sorted.length / 2]);
+        o.put("ms_max", sorted[sorted.length - 1]);
+        results.put(o);
+        return o;
+    }
+}
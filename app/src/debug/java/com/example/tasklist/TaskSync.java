@@ -0,0 +1,172 @@
+package com.example.tasklist;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Дельта-синхронизация задач: передаются только изменения, а не таблица целиком.
+ * <ul>
+ * <li>push — строки журнала SyncStore пакетами по BATCH, схлопнутые по задаче; после ответа
+ * сервера отправленные строки удаляются из журнала;</li>
+ * <li>pull — изменения на сервере после курсора (номер изменения на сервере) пакетами по BATCH;
+ * курсор сохраняется в одной транзакции с применением пакета.</li>
+ * </ul>
+ * Конфликты решаются по полям: у каждого поля своё время изменения, побеждает более позднее
+ * (на сервере — при push, здесь — при pull для ещё не отправленных правок); удаление побеждает правку.
+ * Тела запросов — gzip JSON. Временные ошибки (сеть, 5xx, 429) повторяются с экспоненциальной
+ * задержкой и случайным разбросом. Повтор push безопасен: слияние по времени идемпотентно.
+ * <p>
+ * Протокол:
+ * POST /sync/push {"device", "changes": [...]} → {"accepted"};
+ * POST /sync/pull {"device", "since", "limit"} → {"changes": [...], "cursor", "more"}.
+ * Свои же изменения сервер в pull не возвращает (если они приняты без конфликта).
+ * <p>
+ * Пока только в отладочной сборке (замеры с MockSyncServer): в приложении нет ни сервера,
+ * ни места, откуда запускать синхронизацию, поэтому релиз не получает ни её, ни разрешения INTERNET.
+ * Журнал изменений (DBHelper) остаётся в схеме и без SyncStore.enable ничего не пишет.
+ */
+public class TaskSync {
+    public static final String PATH_PUSH = "/sync/push";
+    public static final String PATH_PULL = "/sync/pull";
+    public static final int BATCH = 1_000;
+
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private static final Metrics.Histogram M_SYNC = Metrics.timer("sync.run");
+    private static final Metrics.Histogram M_BYTES = Metrics.histogram("sync.bytes", "bytes");
+
+    /**
+     * Итог синхронизации: сколько изменений отправлено и применено, сколько запросов
+     * (включая повторы) и сколько сжатых байт тел ушло и пришло.
+     */
+    public static final class Result {
+        public long pushed;
+        public long pulled;
+        public int roundTrips;
+        public int retries;
+        public long bytesSent;
+        public long bytesReceived;
+    }
+
+    private final SyncStore store;
+    private final SyncTransport transport;
+    private final Random jitter = new Random();
+
+    public TaskSync(DBHelper db, SyncTransport transport) {
+        this.store = new SyncStore(db);
+        this.transport = transport;
+    }
+
+    /**
+     * Отправляет локальные изменения, затем забирает серверные. Блокирующий вызов — не из главного потока.
+     */
+    public Result sync() throws IOException {
+        long start = Metrics.now();
+        Result result = new Result();
+        try {
+            store.enable();
+            String device = store.getDeviceId();
+            push(device, result);
+            pull(device, result);
+            return result;
+        } catch (JSONException e) {
+            throw new IOException("Bad sync payload", e);
+        } finally {
+            M_SYNC.record(start);
+            M_BYTES.add(result.bytesSent + result.bytesReceived);
+        }
+    }
+
+    private void push(String device, Result result) throws IOException, JSONException {
+        long afterSeq = 0;
+        List<SyncChange> batch = new ArrayList<>(BATCH);
+        while (true) {
+            batch.clear();
+            long maxSeq = store.readPending(afterSeq, BATCH, batch);
+            if (maxSeq == afterSeq) return;
+            JSONArray changes = new JSONArray();
+            for (SyncChange ch : batch) changes.put(ch.toJson());
+            JSONObject request = new JSONObject().put("device", device).put("changes", changes);
+            call(PATH_PUSH, request, result);
+            store.ackPushed(maxSeq);
+            result.pushed += batch.size();
+            afterSeq = maxSeq;
+        }
+    }
+
+    private void pull(String device, Result result) throws IOException, JSONException {
+        long cursor = store.getPullCursor();
+        while (true) {
+            JSONObject request = new JSONObject().put("device", device).put("since", cursor).put("limit", BATCH);
+            JSONObject response = call(PATH_PULL, request, result);
+            JSONArray changes = response.getJSONArray("changes");
+            List<SyncChange> batch = new ArrayList<>(changes.length());
+            for (int i = 0; i < changes.length(); i++) batch.add(SyncChange.fromJson(changes.getJSONObject(i)));
+            cursor = response.getLong("cursor");
+            store.applyRemote(batch, cursor);
+            result.pulled += batch.size();
+            if (!response.optBoolean("more", false)) return;
+        }
+    }
+
+    // Один запрос с повторами при временных ошибках
+    private JSONObject call(String path, JSONObject request, Result result) throws IOException, JSONException {
+        byte[] body = gzip(request.toString());
+        for (int attempt = 1; ; attempt++) {
+            result.roundTrips++;
+            result.bytesSent += body.length;
+            try {
+                byte[] response = transport.post(path, body);
+                result.bytesReceived += response.length;
+                return new JSONObject(gunzip(response));
+            } catch (SyncTransport.StatusException e) {
+                if (!e.isRetryable() || attempt == MAX_ATTEMPTS) throw e;
+            } catch (IOException e) {
+                if (attempt == MAX_ATTEMPTS || Thread.currentThread().isInterrupted()) throw e;
+            }
+            result.retries++;
+            backoff(attempt);
+        }
+    }
+
+    // 0.5 с, 1 с, 2 с, ... (не больше MAX_BACKOFF_MS) плюс до половины задержки случайно
+    private void backoff(int attempt) throws InterruptedIOException {
+        long delay = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << (attempt - 1));
+        delay += (long) (jitter.nextDouble() * delay / 2);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("sync interrupted");
+        }
+    }
+
+    static byte[] gzip(String json) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    static String gunzip(byte[] body) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return new String(HttpSyncTransport.readAll(in), StandardCharsets.UTF_8);
+        }
+    }
+}
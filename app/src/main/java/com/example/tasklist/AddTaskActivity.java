@@ -2,8 +2,14 @@ package com.example.tasklist;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import android.Manifest;
+import android.app.DatePickerDialog;
+import android.app.TimePickerDialog;
+import android.content.pm.PackageManager;
+import android.os.Build;
 import android.os.Bundle;
 import android.text.TextUtils;
+import android.text.format.DateFormat;
 import android.util.Log;
 import android.widget.Button;
 import android.widget.CheckBox;
@@ -11,37 +17,52 @@ import android.widget.EditText;
 import android.widget.Toast;
 import android.content.Intent;
 
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+
 public class AddTaskActivity extends AppCompatActivity {
     public static final String EXTRA_TASK_ID = "extra_task_id";
+    public static final String EXTRA_DATA_VERSION = "extra_data_version"; // версия БД после сохранения
 
     private EditText etTitle, etDesc;
     private CheckBox cbDoneInForm;
-    private DBHelper dbHelper;
+    private Button btnSave, btnDue;
+    private TaskRepository repository;
     private static final String KEY_TITLE = "key_title";
     private static final String KEY_DESC = "key_desc";
     private static final String KEY_DONE = "key_done";
+    private static final String KEY_DUE = "key_due";
+    private static final int REQ_NOTIFICATIONS = 2001;
     private static final String TAG = "AddTaskActivity";
+    // от onCreate до готовой формы (при редактировании — до загрузки задачи из БД)
+    private static final Metrics.Histogram M_READY = Metrics.timer("ui.addTaskReady");
 
     private long editingTaskId = -1; // -1 = новая задача
+    private long dueAt = 0; // срок в секундах; 0 — без срока
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        final long start = Metrics.now();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_add_task);
 
         etTitle = findViewById(R.id.etTitle);
         etDesc = findViewById(R.id.etDesc);
         cbDoneInForm = findViewById(R.id.cbDoneInForm);
-        Button btnSave = findViewById(R.id.btnSave);
+        btnSave = findViewById(R.id.btnSave);
+        btnDue = findViewById(R.id.btnDue);
 
-        dbHelper = new DBHelper(this);
+        repository = new TaskRepository(this);
 
         // Если активность вызвана с id — загружаем задачу для редактирования
         Intent intent = getIntent();
         if (intent != null && intent.hasExtra(EXTRA_TASK_ID)) {
             editingTaskId = intent.getLongExtra(EXTRA_TASK_ID, -1);
-            if (editingTaskId != -1) {
-                loadTaskForEditing(editingTaskId);
+            // при повороте форма восстанавливается из savedInstanceState, перечитывать не нужно
+            if (editingTaskId != -1 && savedInstanceState == null) {
+                loadTaskForEditing(editingTaskId, start);
             }
         }
 
@@ -50,7 +71,17 @@ public class AddTaskActivity extends AppCompatActivity {
             etTitle.setText(savedInstanceState.getString(KEY_TITLE, ""));
             etDesc.setText(savedInstanceState.getString(KEY_DESC, ""));
             cbDoneInForm.setChecked(savedInstanceState.getBoolean(KEY_DONE, false));
+            dueAt = savedInstanceState.getLong(KEY_DUE, 0);
         }
+        showDue();
+
+        // срок: дата, затем время; долгое нажатие убирает срок
+        btnDue.setOnClickListener(v -> pickDue());
+        btnDue.setOnLongClickListener(v -> {
+            dueAt = 0;
+            showDue();
+            return true;
+        });
 
         btnSave.setOnClickListener(v -> {
             String title = etTitle.getText().toString().trim();
@@ -62,50 +93,88 @@ public class AddTaskActivity extends AppCompatActivity {
                 return;
             }
 
-            try {
-                if (editingTaskId == -1) {
-                    // добавление новой
-                    Task t = new Task(title, desc, done);
-                    long id = dbHelper.addTask(t);
+            // блокируем кнопку, пока запись не завершится, чтобы не сохранить задачу дважды
+            btnSave.setEnabled(false);
+            if (editingTaskId == -1) {
+                // добавление новой
+                Task t = new Task(title, desc, done);
+                t.setDueAt(dueAt);
+                repository.addTask(t, id -> {
                     if (id != -1) {
                         Toast.makeText(this, "Задача добавлена", Toast.LENGTH_SHORT).show();
-                        setResult(RESULT_OK);
+                        setResult(RESULT_OK, resultIntent(id));
                         finish();
                     } else {
+                        btnSave.setEnabled(true);
                         Toast.makeText(this, "Ошибка при добавлении задачи", Toast.LENGTH_SHORT).show();
                     }
-                } else {
-                    // обновление существующей
-                    Task t = new Task(editingTaskId, title, desc, done);
-                    boolean ok = dbHelper.updateTask(t);
+                });
+            } else {
+                // обновление существующей
+                Task t = new Task(editingTaskId, title, desc, done);
+                t.setDueAt(dueAt);
+                repository.updateTask(t, ok -> {
                     if (ok) {
                         Toast.makeText(this, "Задача обновлена", Toast.LENGTH_SHORT).show();
-                        setResult(RESULT_OK);
+                        setResult(RESULT_OK, resultIntent(editingTaskId));
                         finish();
                     } else {
+                        btnSave.setEnabled(true);
                         Toast.makeText(this, "Ошибка при обновлении задачи", Toast.LENGTH_SHORT).show();
                     }
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "save error", e);
-                Toast.makeText(this, "Исключение при работе с БД", Toast.LENGTH_SHORT).show();
+                });
             }
         });
+        if (editingTaskId == -1 || savedInstanceState != null) M_READY.record(start);
     }
 
-    private void loadTaskForEditing(long id) {
-        try {
-            Task t = dbHelper.getTaskById(id);
+    // id изменённой задачи — чтобы список мог обновить одну строку вместо полной перезагрузки
+    private Intent resultIntent(long taskId) {
+        return new Intent()
+                .putExtra(EXTRA_TASK_ID, taskId)
+                .putExtra(EXTRA_DATA_VERSION, repository.getDataVersion());
+    }
+
+    private void loadTaskForEditing(long id, long start) {
+        repository.getTaskById(id, t -> {
+            M_READY.record(start);
             if (t != null) {
                 etTitle.setText(t.getTitle());
                 etDesc.setText(t.getDescription());
                 cbDoneInForm.setChecked(t.isDone());
+                dueAt = t.getDueAt();
+                showDue();
             } else {
+                Log.e(TAG, "loadTaskForEditing: task " + id + " not found");
                 Toast.makeText(this, "Задача не найдена", Toast.LENGTH_SHORT).show();
             }
-        } catch (Exception e) {
-            Log.e(TAG, "loadTaskForEditing error", e);
-            Toast.makeText(this, "Ошибка при загрузке задачи", Toast.LENGTH_SHORT).show();
+        });
+    }
+
+    private void pickDue() {
+        Calendar c = Calendar.getInstance();
+        if (dueAt > 0) c.setTimeInMillis(dueAt * 1000L);
+        else c.add(Calendar.HOUR_OF_DAY, 1);
+        new DatePickerDialog(this, (dateView, year, month, day) -> new TimePickerDialog(this, (timeView, hour, minute) -> {
+            c.set(year, month, day, hour, minute, 0);
+            dueAt = c.getTimeInMillis() / 1000L;
+            showDue();
+            requestNotificationPermission();
+        }, c.get(Calendar.HOUR_OF_DAY), c.get(Calendar.MINUTE), DateFormat.is24HourFormat(this)).show(),
+                c.get(Calendar.YEAR), c.get(Calendar.MONTH), c.get(Calendar.DAY_OF_MONTH)).show();
+    }
+
+    private void showDue() {
+        btnDue.setText(dueAt > 0
+                ? "Срок: " + new SimpleDateFormat("dd.MM.yyyy HH:mm", Locale.getDefault()).format(new Date(dueAt * 1000L))
+                : "Срок: нет");
+    }
+
+    // Напоминание о сроке — уведомление; с Android 13 на него нужно разрешение
+    private void requestNotificationPermission() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && checkSelfPermission(Manifest.permission.POST_NOTIFICATIONS) != PackageManager.PERMISSION_GRANTED) {
+            requestPermissions(new String[]{Manifest.permission.POST_NOTIFICATIONS}, REQ_NOTIFICATIONS);
         }
     }
 
@@ -114,12 +183,13 @@ public class AddTaskActivity extends AppCompatActivity {
         outState.putString(KEY_TITLE, etTitle.getText().toString());
         outState.putString(KEY_DESC, etDesc.getText().toString());
         outState.putBoolean(KEY_DONE, cbDoneInForm.isChecked());
+        outState.putLong(KEY_DUE, dueAt);
         super.onSaveInstanceState(outState);
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (dbHelper != null) dbHelper.close();
+        if (repository != null) repository.close();
     }
 }
@@ -1,19 +1,29 @@
 package com.example.tasklist;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.util.Log;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DBHelper extends SQLiteOpenHelper {
     private static final String TAG = "DBHelper";
     private static final String DB_NAME = "tasks.db";
-    private static final int DB_VERSION = 2;
+    private static final int DB_VERSION = 9;
 
     public static final String TABLE = "tasks";
     public static final String COL_ID = "id";
@@ -21,9 +31,192 @@ public class DBHelper extends SQLiteOpenHelper {
     public static final String COL_DESC = "description";
     public static final String COL_DONE = "done"; // 0 or 1
     public static final String COL_CREATED = "created_at";
+    // Синхронизация (см. SyncStore): глобальный id задачи и время последнего изменения в мс
+    public static final String COL_UID = "uid";
+    public static final String COL_UPDATED = "updated_at";
+    // Срок задачи в секундах (как created_at); NULL — без срока. Напоминание — в этот момент (ReminderScheduler)
+    public static final String COL_DUE = "due_at";
+
+    // Полнотекстовый индекс по title/description (external content: тексты хранятся только в tasks)
+    public static final String FTS_TABLE = "tasks_fts";
+
+    // Счётчики задач (одна строка), поддерживаются триггерами на tasks — см. createStats
+    public static final String STATS_TABLE = "task_stats";
+
+    // Журнал изменений для синхронизации и её состояние (см. createSync)
+    public static final String SYNC_LOG_TABLE = "sync_log";
+    public static final String SYNC_STATE_TABLE = "sync_state";
+    static final String SYNC_ENABLED_KEY = "enabled";
+    private static final String IDX_UID = "idx_tasks_uid";
+
+    // Текущее время в мс средствами SQLite (unixepoch() есть не во всех версиях на Android)
+    static final String NOW_MS_SQL = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+    // Новый uid задачи: 128 случайных бит в hex
+    static final String NEW_UID_SQL = "lower(hex(randomblob(16)))";
+
+    // Индексы под ORDER BY done, created_at: второй нужен для смешанных направлений сортировки
+    private static final String IDX_DONE_CREATED = "idx_tasks_done_created";
+    private static final String IDX_DONE_CREATED_DESC = "idx_tasks_done_created_desc";
+    // Частичный индекс по сроку только невыполненных задач со сроком (см. createDueIndex)
+    static final String IDX_DUE = "idx_tasks_due";
+    private static final String DUE_PENDING = COL_DONE + " = 0 AND " + COL_DUE + " IS NOT NULL";
+
+    // Версия данных: увеличивается при каждой успешной записи (общая на процесс для всех экземпляров)
+    private static final AtomicLong DATA_VERSION = new AtomicLong();
+    // Кому сообщить о записи в обход методов DBHelper (onBulkWrite); вызываются в потоке, выполнившем запись
+    private static final List<Runnable> BULK_WRITE_LISTENERS = new CopyOnWriteArrayList<>();
+
+    // Кэш задач по id (общий на процесс): заполняется чтениями, обновляется каждой записью
+    private static final TaskCache CACHE = new TaskCache(TaskCache.DEFAULT_MAX_SIZE);
+
+    private long openStart; // начало открытия БД, для метрики db.open
+    private volatile boolean fts5 = true; // FTS_TABLE создан на FTS5 (иначе FTS4), см. onOpen
+
+    // Явная проекция списка: позиции колонок в курсоре известны заранее, getColumnIndex не нужен
+    private static final String[] TASK_COLUMNS = {COL_ID, COL_TITLE, COL_DESC, COL_DONE, COL_CREATED, COL_DUE};
+    private static final int IDX_ID = 0;
+    private static final int IDX_TITLE = 1;
+    private static final int IDX_DESC = 2;
+    private static final int IDX_DONE = 3;
+    private static final int IDX_CREATED = 4;
+    private static final int IDX_DUE_AT = 5;
+
+    /**
+     * Сколько символов описания читает список: строка показывает не больше 10 строк описания,
+     * поэтому длинные заметки не тянутся целиком в CursorWindow и кучу. Полный текст —
+     * getTaskById (форма редактирования). Порядок колонок тот же, что в TASK_COLUMNS.
+     */
+    public static final int SNIPPET_CHARS = 500;
+    private static final String[] LIST_COLUMNS = {COL_ID, COL_TITLE,
+            "substr(" + COL_DESC + ", 1, " + SNIPPET_CHARS + ") AS " + COL_DESC, COL_DONE, COL_CREATED, COL_DUE,
+            "length(" + COL_DESC + ") > " + SNIPPET_CHARS + " AS desc_truncated"};
+    private static final int IDX_DESC_TRUNCATED = 6;
+
+    // Запросы горячих путей компилируются один раз при первом использовании и живут до close()
+    private static final int STMT_INSERT = 0;
+    private static final int STMT_UPDATE = 1;
+    private static final int STMT_UPDATE_STATUS = 2;
+    private static final int STMT_DELETE = 3;
+    private static final String[] STATEMENT_SQL = {
+            "INSERT INTO " + TABLE + " (" + COL_TITLE + ", " + COL_DESC + ", " + COL_DONE + ", " + COL_DUE + ", "
+                    + COL_CREATED + ", " + COL_UID + ", " + COL_UPDATED + ") VALUES (?, ?, ?, ?, ?, " + NEW_UID_SQL
+                    + ", " + NOW_MS_SQL + ")",
+            // Не меняем created_at при обновлении
+            "UPDATE " + TABLE + " SET " + COL_TITLE + " = ?, " + COL_DESC + " = ?, " + COL_DONE + " = ?, "
+                    + COL_DUE + " = ?, " + COL_UPDATED + " = " + NOW_MS_SQL + " WHERE " + COL_ID + " = ?",
+            "UPDATE " + TABLE + " SET " + COL_DONE + " = ?, " + COL_UPDATED + " = " + NOW_MS_SQL + " WHERE "
+                    + COL_ID + " = ?",
+            "DELETE FROM " + TABLE + " WHERE " + COL_ID + " = ?",
+    };
+    // SQLiteStatement не потокобезопасен: привязка параметров и выполнение — под этой блокировкой
+    private final Object statementLock = new Object();
+    private final SQLiteStatement[] statements = new SQLiteStatement[STATEMENT_SQL.length];
+    private SQLiteDatabase statementsDb; // БД, для которой скомпилированы statements
+
+    // Настройки соединения (применяются при открытии БД, см. onConfigure)
+    private static volatile String synchronousMode = "NORMAL"; // в режиме WAL NORMAL не теряет целостность
+    private static volatile int pageCacheKb = 4096;
+    private static volatile int checkpointEveryWrites = 500; // 0 — только автоматический checkpoint SQLite
+    private final AtomicLong writesSinceCheckpoint = new AtomicLong();
+
+    private final TaskCache cache;
+    private final boolean walEnabled;
+
+    // Метрики (см. Metrics): задержки всех операций и число строк в ответах запросов
+    private static final Metrics.Histogram M_ADD = Metrics.timer("db.addTask");
+    private static final Metrics.Histogram M_ADD_BATCH = Metrics.timer("db.addTasks");
+    private static final Metrics.Histogram M_UPDATE = Metrics.timer("db.updateTask");
+    private static final Metrics.Histogram M_UPDATE_STATUS = Metrics.timer("db.updateTaskStatus");
+    private static final Metrics.Histogram M_UPDATE_STATUSES = Metrics.timer("db.updateTaskStatuses");
+    private static final Metrics.Histogram M_UPDATE_STATUS_BATCH = Metrics.timer("db.updateTaskStatus(ids)");
+    private static final Metrics.Histogram M_DELETE = Metrics.timer("db.deleteTask");
+    private static final Metrics.Histogram M_DELETE_BATCH = Metrics.timer("db.deleteTasks");
+    private static final Metrics.Histogram M_DELETE_DONE = Metrics.timer("db.deleteDoneTasks");
+    private static final Metrics.Histogram M_GET_TASKS = Metrics.timer("db.getTasks");
+    private static final Metrics.Histogram M_GET_PAGE = Metrics.timer("db.getTasksPage");
+    private static final Metrics.Histogram M_GET_SNAPSHOT = Metrics.timer("db.getTaskSnapshot");
+    private static final Metrics.Histogram M_GET_BY_ID = Metrics.timer("db.getTaskById");
+    private static final Metrics.Histogram M_FOR_EACH = Metrics.timer("db.forEachTask");
+    private static final Metrics.Histogram M_CHECKPOINT = Metrics.timer("db.checkpoint");
+    private static final Metrics.Histogram M_OPEN = Metrics.timer("db.open");
+    private static final Metrics.Histogram M_GET_STATS = Metrics.timer("db.getStats");
+    private static final Metrics.Histogram M_NEXT_DUE = Metrics.timer("db.getNextDueAt");
+    private static final Metrics.Histogram M_GET_DUE = Metrics.timer("db.getDueTasks");
+    private static final Metrics.Histogram M_QUERY_ROWS = Metrics.histogram("db.query.rows", "rows");
 
     public DBHelper(Context context) {
         super(context, DB_NAME, null, DB_VERSION);
+        this.cache = CACHE;
+        this.walEnabled = true;
+    }
+
+    /**
+     * Отдельная БД (например, для замеров производительности) со своим кэшем,
+     * чтобы её задачи не смешивались с задачами пользователя в общем кэше.
+     */
+    DBHelper(Context context, String dbName, boolean walEnabled) {
+        super(context, dbName, null, DB_VERSION);
+        this.cache = new TaskCache(TaskCache.DEFAULT_MAX_SIZE);
+        this.walEnabled = walEnabled;
+    }
+
+    /**
+     * Уровень PRAGMA synchronous: OFF, NORMAL, FULL или EXTRA. Действует для соединений, открытых после вызова.
+     */
+    public static void setSynchronousMode(String mode) {
+        String m = mode != null ? mode.toUpperCase(Locale.ROOT) : "";
+        if (!m.equals("OFF") && !m.equals("NORMAL") && !m.equals("FULL") && !m.equals("EXTRA")) {
+            throw new IllegalArgumentException("Unknown synchronous mode: " + mode);
+        }
+        synchronousMode = m;
+    }
+
+    // Размер кэша страниц SQLite в килобайтах
+    public static void setPageCacheKb(int kb) {
+        pageCacheKb = Math.max(0, kb);
+    }
+
+    // Как часто (в успешных записях) делать пассивный checkpoint журнала WAL
+    public static void setCheckpointEveryWrites(int writes) {
+        checkpointEveryWrites = Math.max(0, writes);
+    }
+
+    /**
+     * WAL: читатели не блокируются писателем и наоборот, а коммит — это дозапись в журнал
+     * вместо перезаписи страниц с fsync rollback-журнала.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        openStart = Metrics.now();
+        super.onConfigure(db);
+        if (walEnabled) db.enableWriteAheadLogging();
+        db.execSQL("PRAGMA synchronous = " + synchronousMode);
+        // отрицательное значение cache_size — размер в КиБ, а не в страницах
+        if (pageCacheKb > 0) db.execSQL("PRAGMA cache_size = -" + pageCacheKb);
+    }
+
+    /**
+     * Переносит содержимое WAL в основной файл БД, не дожидаясь читателей (PASSIVE).
+     */
+    public void checkpoint() {
+        Cursor c = null;
+        long start = Metrics.now();
+        try {
+            c = getWritableDatabase().rawQuery("PRAGMA wal_checkpoint(PASSIVE)", null);
+            c.moveToFirst();
+            writesSinceCheckpoint.set(0);
+        } catch (Exception e) {
+            Log.e(TAG, "checkpoint error", e);
+        } finally {
+            M_CHECKPOINT.record(start);
+            if (c != null) c.close();
+        }
+    }
+
+    // Вызывается после успешной записи: периодически сбрасывает WAL, чтобы журнал не разрастался
+    private void afterWrite() {
+        int every = checkpointEveryWrites;
+        if (every > 0 && writesSinceCheckpoint.incrementAndGet() >= every) checkpoint();
     }
 
     @Override
@@ -34,162 +227,1040 @@ public class DBHelper extends SQLiteOpenHelper {
                 + COL_TITLE + " TEXT NOT NULL, "
                 + COL_DESC + " TEXT, "
                 + COL_DONE + " INTEGER DEFAULT 0, "
-                + COL_CREATED + " INTEGER"
+                + COL_CREATED + " INTEGER, "
+                + COL_UID + " TEXT, "
+                + COL_UPDATED + " INTEGER, "
+                + COL_DUE + " INTEGER"
                 + ");";
         db.execSQL(sql);
+        createFts(db, false);
+        createOrderIndexes(db);
+        createStats(db);
+        createSync(db);
+        createDueIndex(db);
+        DataMigrations.createTable(db);
     }
 
+    /**
+     * Здесь только изменения схемы: onUpgrade выполняется внутри открытия БД, до первого кадра.
+     * Проходы по всем строкам (заполнение новых столбцов, построение FTS-индекса) ставятся
+     * в DataMigrations и выполняются порциями в фоне. Ошибки не глотаются: onUpgrade идёт
+     * в транзакции, исключение откатывает её, и БД остаётся целой на старой версии.
+     */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldV, int newV) {
-
+        DataMigrations.createTable(db);
         if (oldV < 2) {
-            try {
-                db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + COL_CREATED + " INTEGER;");
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + COL_CREATED + " INTEGER;");
+            // исключение из правила выше: created_at — ключ keyset-пагинации, и строки с NULL
+            // пропадали бы из списка до конца фонового прохода. Заполняется здесь (время миграции)
+            db.execSQL("UPDATE " + TABLE + " SET " + COL_CREATED + " = strftime('%s','now');");
+        }
+        if (oldV < 3) {
+            // новые задачи попадают в индекс триггером сразу, существующие — фоновым проходом
+            // от новых к старым; до его окончания поиск находит только проиндексированные
+            long maxId = DatabaseUtils.longForQuery(db, "SELECT ifnull(MAX(" + COL_ID + "), 0) FROM " + TABLE, null);
+            DataMigrations.schedule(db, DataMigrations.FTS, maxId + 1);
+            createFts(db, true);
+        }
+        if (oldV < 4) {
+            createOrderIndexes(db);
+        }
+        if (oldV < 5) {
+            createStats(db);
+            // счётчики для уже существующих задач: один проход по индексу done
+            repairStats(db);
+        }
+        if (oldV < 6) {
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + COL_UID + " TEXT;");
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + COL_UPDATED + " INTEGER;");
+            DataMigrations.schedule(db, DataMigrations.UID, 0);
+            createSync(db);
+        }
+        if (oldV < 8) {
+            // у существующих задач срока нет: индекс создаётся пустым, проход по строкам не нужен
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + COL_DUE + " INTEGER;");
+            createDueIndex(db);
+        }
+        if (oldV < 9) {
+            // журнал синхронизации начинает учитывать срок: триггеры пересоздаются с новой маской
+            for (String suffix : new String[]{"_ai", "_au", "_ad"}) {
+                db.execSQL("DROP TRIGGER IF EXISTS " + SYNC_LOG_TABLE + suffix + ";");
+            }
+            createSync(db);
+        }
+    }
+
+    /**
+     * В индексе только невыполненные задачи со сроком: задачи без срока его не увеличивают
+     * и не обновляют при записи. Запросы по сроку должны содержать DUE_PENDING дословно —
+     * иначе SQLite не может использовать частичный индекс.
+     */
+    private static void createDueIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + IDX_DUE + " ON " + TABLE + " (" + COL_DUE + ") WHERE "
+                + DUE_PENDING + ";");
+    }
+
+    /**
+     * Журнал изменений для синхронизации: триггеры на tasks пишут строку на каждую вставку,
+     * изменение title/description/done/due_at (fields — маска изменённых полей, см. SyncChange)
+     * и удаление (op = 2 — надгробие, uid удалённой задачи). Журнал ведётся, только пока
+     * синхронизация включена (SyncStore.enable): без неё запись не платит за лишнюю строку.
+     * Отправленные на сервер строки удаляются (SyncStore.ackPushed), так что журнал не растёт.
+     */
+    private void createSync(SQLiteDatabase db) {
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS " + IDX_UID + " ON " + TABLE + " (" + COL_UID + ");");
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + SYNC_LOG_TABLE + " (seq INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "uid TEXT NOT NULL, op INTEGER NOT NULL, fields INTEGER NOT NULL, changed_at INTEGER NOT NULL);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_sync_log_uid ON " + SYNC_LOG_TABLE + " (uid);");
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + SYNC_STATE_TABLE + " (key TEXT PRIMARY KEY, value TEXT);");
+
+        String enabled = "EXISTS (SELECT 1 FROM " + SYNC_STATE_TABLE + " WHERE key = '" + SYNC_ENABLED_KEY + "')";
+        String log = "INSERT INTO " + SYNC_LOG_TABLE + " (uid, op, fields, changed_at) VALUES ";
+        String mask = "((old." + COL_TITLE + " IS NOT new." + COL_TITLE + ") * " + SyncChange.FIELD_TITLE
+                + " + (old." + COL_DESC + " IS NOT new." + COL_DESC + ") * " + SyncChange.FIELD_DESC
+                + " + (old." + COL_DONE + " IS NOT new." + COL_DONE + ") * " + SyncChange.FIELD_DONE
+                + " + (old." + COL_DUE + " IS NOT new." + COL_DUE + ") * " + SyncChange.FIELD_DUE + ")";
+        String changedAt = "ifnull(new." + COL_UPDATED + ", " + NOW_MS_SQL + ")";
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + SYNC_LOG_TABLE + "_ai AFTER INSERT ON " + TABLE
+                + " WHEN " + enabled + " BEGIN " + log + "(new." + COL_UID + ", " + SyncChange.OP_UPSERT + ", "
+                + SyncChange.FIELD_ALL + ", " + changedAt + "); END;");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + SYNC_LOG_TABLE + "_au AFTER UPDATE OF "
+                + COL_TITLE + ", " + COL_DESC + ", " + COL_DONE + ", " + COL_DUE + " ON " + TABLE
+                + " WHEN " + mask + " != 0 AND " + enabled + " BEGIN " + log + "(new." + COL_UID + ", "
+                + SyncChange.OP_UPSERT + ", " + mask + ", " + changedAt + "); END;");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + SYNC_LOG_TABLE + "_ad AFTER DELETE ON " + TABLE
+                + " WHEN " + enabled + " BEGIN " + log + "(old." + COL_UID + ", " + SyncChange.OP_DELETE + ", 0, "
+                + NOW_MS_SQL + "); END;");
+    }
+
+    /**
+     * Запись в обход методов DBHelper (применение изменений с сервера): кэш задач сбрасывается целиком,
+     * версия данных увеличивается, чтобы экраны перечитали список.
+     */
+    void onBulkWrite() {
+        synchronized (cache) {
+            DATA_VERSION.incrementAndGet();
+            cache.clear();
+        }
+        afterWrite();
+        for (Runnable listener : BULK_WRITE_LISTENERS) listener.run();
+    }
+
+    static void addBulkWriteListener(Runnable listener) {
+        BULK_WRITE_LISTENERS.add(listener);
+    }
+
+    static void removeBulkWriteListener(Runnable listener) {
+        BULK_WRITE_LISTENERS.remove(listener);
+    }
+
+    /**
+     * Таблица из одной строки (total, done) и триггеры, которые меняют её в той же транзакции,
+     * что и саму запись: заголовок читает счётчики одной строкой, без COUNT(*) по tasks.
+     * "IS 1" вместо "= 1" — чтобы NULL в done считался невыполненной задачей, а не обнулял сумму.
+     */
+    private void createStats(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + STATS_TABLE + " (id INTEGER PRIMARY KEY CHECK (id = 1), "
+                + "total INTEGER NOT NULL, done INTEGER NOT NULL);");
+        db.execSQL("INSERT OR IGNORE INTO " + STATS_TABLE + " (id, total, done) VALUES (1, 0, 0);");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + STATS_TABLE + "_ai AFTER INSERT ON " + TABLE + " BEGIN "
+                + "UPDATE " + STATS_TABLE + " SET total = total + 1, done = done + (new." + COL_DONE + " IS 1)"
+                + " WHERE id = 1; END;");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + STATS_TABLE + "_ad AFTER DELETE ON " + TABLE + " BEGIN "
+                + "UPDATE " + STATS_TABLE + " SET total = total - 1, done = done - (old." + COL_DONE + " IS 1)"
+                + " WHERE id = 1; END;");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + STATS_TABLE + "_au AFTER UPDATE OF " + COL_DONE + " ON " + TABLE
+                + " WHEN (old." + COL_DONE + " IS 1) != (new." + COL_DONE + " IS 1) BEGIN "
+                + "UPDATE " + STATS_TABLE + " SET done = done + (new." + COL_DONE + " IS 1) - (old." + COL_DONE
+                + " IS 1) WHERE id = 1; END;");
+    }
+
+    // Пересчитывает счётчики по таблице (полный проход по индексу done)
+    private static void repairStats(SQLiteDatabase db) {
+        db.execSQL("INSERT OR REPLACE INTO " + STATS_TABLE + " (id, total, done) SELECT 1, COUNT(*), "
+                + "COUNT(CASE WHEN " + COL_DONE + " IS 1 THEN 1 END) FROM " + TABLE + ";");
+    }
+
+    /**
+     * Счётчики задач за O(1): одна строка STATS_TABLE, независимо от размера таблицы.
+     * Никогда не возвращает null: нет строки — TaskStats.EMPTY, ошибка чтения — исключение
+     * (его не спутать с расхождением в verifyStats; TaskRepository отдаёт экрану null).
+     */
+    public TaskStats getStats() {
+        long start = Metrics.now();
+        try (Cursor c = getReadableDatabase().rawQuery(
+                "SELECT total, done FROM " + STATS_TABLE + " WHERE id = 1", null)) {
+            return c.moveToFirst() ? new TaskStats(c.getLong(0), c.getLong(1)) : TaskStats.EMPTY;
+        } finally {
+            M_GET_STATS.record(start);
+        }
+    }
+
+    /**
+     * Сверяет счётчики с COUNT(*) по таблице и при расхождении пересчитывает их
+     * (в одной транзакции с проверкой, чтобы запись не вклинилась между ними).
+     * Полный проход по индексу — для отладки и замеров, не для горячего пути.
+     * Возвращает true, если счётчики были верны.
+     */
+    public boolean verifyStats() {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            TaskStats stored = getStats();
+            TaskStats actual;
+            try (Cursor c = db.rawQuery("SELECT COUNT(*), COUNT(CASE WHEN " + COL_DONE + " IS 1 THEN 1 END) FROM "
+                    + TABLE, null)) {
+                c.moveToFirst();
+                actual = new TaskStats(c.getLong(0), c.getLong(1));
+            }
+            boolean ok = actual.equals(stored);
+            if (!ok) {
+                Log.w(TAG, "task stats out of sync: stored " + stored.getTotal() + "/" + stored.getDone()
+                        + ", actual " + actual.getTotal() + "/" + actual.getDone());
+                repairStats(db);
+            }
+            db.setTransactionSuccessful();
+            return ok;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Индекс (done, created_at) обходится вперёд для done ASC, created_at ASC и назад для DESC, DESC;
+     * индекс (done, created_at DESC) — аналогично для смешанных направлений.
+     * id (rowid) неявно хранится в конце каждого индекса, поэтому он же служит устойчивым тай-брейком.
+     */
+    private void createOrderIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + IDX_DONE_CREATED + " ON " + TABLE
+                + " (" + COL_DONE + ", " + COL_CREATED + ");");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + IDX_DONE_CREATED_DESC + " ON " + TABLE
+                + " (" + COL_DONE + ", " + COL_CREATED + " DESC);");
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        fts5 = isFts5(db);
+        // открытие соединения: настройка, проверка версии схемы (и миграция, если нужна)
+        M_OPEN.record(openStart);
+    }
+
+    /**
+     * ORDER BY списка задач. Направление id совпадает с направлением done — именно в таком
+     * порядке rowid лежит в индексах, и сортировка полностью обслуживается индексом.
+     */
+    static String orderBy(boolean completedFirst, boolean dateDesc) {
+        String doneDir = completedFirst ? " DESC" : " ASC";
+        return COL_DONE + doneDir + ", " + COL_CREATED + (dateDesc ? " DESC" : " ASC") + ", " + COL_ID + doneDir;
+    }
+
+    /**
+     * Возвращает EXPLAIN QUERY PLAN запроса списка без поиска для заданной сортировки.
+     */
+    public String explainTaskOrder(boolean completedFirst, boolean dateDesc) {
+        return explainTaskOrder(getReadableDatabase(), completedFirst, dateDesc);
+    }
+
+    private String explainTaskOrder(SQLiteDatabase db, boolean completedFirst, boolean dateDesc) {
+        return explain(db, "SELECT * FROM " + TABLE + " ORDER BY " + orderBy(completedFirst, dateDesc), null);
+    }
+
+    private static String explain(SQLiteDatabase db, String sql, String[] args) {
+        StringBuilder plan = new StringBuilder();
+        Cursor c = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            int detail = c.getColumnIndex("detail");
+            while (c.moveToNext()) {
+                if (plan.length() > 0) plan.append('\n');
+                plan.append(c.getString(detail >= 0 ? detail : c.getColumnCount() - 1));
+            }
+        } finally {
+            c.close();
+        }
+        return plan.toString();
+    }
 
-                db.execSQL("UPDATE " + TABLE + " SET " + COL_CREATED + " = strftime('%s','now') WHERE " + COL_CREATED + " IS NULL;");
-            } catch (Exception e) {
-                Log.e(TAG, "onUpgrade migration error", e);
+    // Запрос дольше порога Metrics попадает в журнал медленных вместе с SQL и планом выполнения
+    private static void reportIfSlow(SQLiteDatabase db, String selection, String[] selectionArgs, String orderBy,
+                                     String limit, long start) {
+        if (!Metrics.isSlow(start)) return;
+        String sql = SQLiteQueryBuilder.buildQueryString(false, TABLE, LIST_COLUMNS, selection, null, null,
+                orderBy, limit);
+        String plan;
+        try {
+            plan = explain(db, sql, selectionArgs);
+        } catch (Exception e) {
+            plan = "EXPLAIN failed: " + e;
+        }
+        Metrics.reportSlowQuery(sql, selectionArgs, start, plan);
+    }
+
+    /**
+     * Проверяет, что все четыре варианта сортировки идут по индексу без временного B-дерева.
+     * Диагностика для замеров (TaskBenchmark), не для открытия БД в приложении.
+     */
+    public boolean verifyOrderIndexes() {
+        SQLiteDatabase db = getReadableDatabase();
+        boolean ok = true;
+        try {
+            for (int i = 0; i < 4; i++) {
+                boolean completedFirst = (i & 1) != 0;
+                boolean dateDesc = (i & 2) != 0;
+                String plan = explainTaskOrder(db, completedFirst, dateDesc);
+                if (plan.contains("TEMP B-TREE")) {
+                    ok = false;
+                    Log.w(TAG, "task order not served by index: " + orderBy(completedFirst, dateDesc) + " -> " + plan);
+                }
             }
+        } catch (Exception e) {
+            Log.e(TAG, "verifyOrderIndexes error", e);
+            return false;
+        }
+        return ok;
+    }
+
+    /**
+     * Создаёт FTS-таблицу и триггеры синхронизации с tasks.
+     * FTS5 есть не во всех сборках SQLite на Android, поэтому при его отсутствии используем FTS4.
+     * guarded — индекс ещё заполняется (см. DataMigrations.FTS): триггеры изменения и удаления
+     * не трогают строки, до которых фоновый проход не дошёл, — их там нет, а удаление из индекса
+     * отсутствующей строки портит его.
+     */
+    private static void createFts(SQLiteDatabase db, boolean guarded) {
+        boolean fts5;
+        try {
+            db.execSQL("CREATE VIRTUAL TABLE " + FTS_TABLE + " USING fts5("
+                    + COL_TITLE + ", " + COL_DESC + ", content='" + TABLE + "', content_rowid='" + COL_ID + "', "
+                    + "tokenize='unicode61');");
+            fts5 = true;
+        } catch (SQLException e) {
+            Log.w(TAG, "FTS5 is not available, falling back to FTS4");
+            db.execSQL("CREATE VIRTUAL TABLE " + FTS_TABLE + " USING fts4("
+                    + COL_TITLE + ", " + COL_DESC + ", content=\"" + TABLE + "\", tokenize=unicode61);");
+            fts5 = false;
+        }
+        createFtsTriggers(db, fts5, guarded);
+    }
+
+    /**
+     * Индекс заполнен: триггеры пересоздаются без условия (вызывается в транзакции последней порции).
+     */
+    static void onFtsBackfilled(SQLiteDatabase db) {
+        boolean fts5 = isFts5(db);
+        for (String suffix : new String[]{"_ai", "_ad", "_au", "_bd", "_bu"}) {
+            db.execSQL("DROP TRIGGER IF EXISTS " + FTS_TABLE + suffix + ";");
+        }
+        createFtsTriggers(db, fts5, false);
+    }
+
+    private static boolean isFts5(SQLiteDatabase db) {
+        return DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM sqlite_master WHERE name = ? AND sql LIKE ?",
+                new String[]{FTS_TABLE, "%fts5%"}) > 0;
+    }
+
+    private static void createFtsTriggers(SQLiteDatabase db, boolean fts5, boolean guarded) {
+        String cols = COL_TITLE + ", " + COL_DESC;
+        String newVals = "new." + COL_TITLE + ", new." + COL_DESC;
+        String oldVals = "old." + COL_TITLE + ", old." + COL_DESC;
+        String insertNew = "INSERT INTO " + FTS_TABLE + "(rowid, " + cols + ") VALUES (new." + COL_ID + ", " + newVals + ");";
+        String when = guarded ? " WHEN " + DataMigrations.ftsIndexed("old." + COL_ID) : "";
+        if (fts5) {
+            String deleteOld = "INSERT INTO " + FTS_TABLE + "(" + FTS_TABLE + ", rowid, " + cols + ") "
+                    + "VALUES ('delete', old." + COL_ID + ", " + oldVals + ");";
+            db.execSQL("CREATE TRIGGER " + FTS_TABLE + "_ai AFTER INSERT ON " + TABLE + " BEGIN " + insertNew + " END;");
+            db.execSQL("CREATE TRIGGER " + FTS_TABLE + "_ad AFTER DELETE ON " + TABLE + when
+                    + " BEGIN " + deleteOld + " END;");
+            db.execSQL("CREATE TRIGGER " + FTS_TABLE + "_au AFTER UPDATE OF " + cols + " ON " + TABLE + when
+                    + " BEGIN " + deleteOld + " " + insertNew + " END;");
         } else {
+            // FTS4 читает старые значения из content-таблицы, поэтому удаление — в BEFORE-триггерах
+            String deleteOld = "DELETE FROM " + FTS_TABLE + " WHERE docid = old." + COL_ID + ";";
+            db.execSQL("CREATE TRIGGER " + FTS_TABLE + "_ai AFTER INSERT ON " + TABLE + " BEGIN " + insertNew + " END;");
+            db.execSQL("CREATE TRIGGER " + FTS_TABLE + "_bd BEFORE DELETE ON " + TABLE + when
+                    + " BEGIN " + deleteOld + " END;");
+            db.execSQL("CREATE TRIGGER " + FTS_TABLE + "_bu BEFORE UPDATE OF " + cols + " ON " + TABLE + when
+                    + " BEGIN " + deleteOld + " END;");
+            db.execSQL("CREATE TRIGGER " + FTS_TABLE + "_au AFTER UPDATE OF " + cols + " ON " + TABLE + when
+                    + " BEGIN " + insertNew + " END;");
+        }
+    }
+
+    /**
+     * Превращает пользовательский ввод в MATCH-выражение: каждое слово — префиксный поиск,
+     * все слова должны встретиться (AND). В слове остаются только буквы и цифры (кавычки и другие
+     * спецсимволы FTS отбрасываются), и оно берётся в кавычки — так AND, OR, NOT и NEAR ищутся
+     * как обычные слова, а не разбираются как операторы. Префикс в FTS5 — "слово"*, в FTS4
+     * звёздочка ставится внутри кавычек: "слово*".
+     * Возвращает null, если в запросе не осталось ни одного слова.
+     */
+    static String toMatchQuery(String search, boolean fts5) {
+        StringBuilder sb = new StringBuilder();
+        StringBuilder token = new StringBuilder();
+        for (int i = 0, n = search.length(); i <= n; i++) {
+            char ch = i < n ? search.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(ch)) {
+                token.append(ch);
+            } else if (token.length() > 0) {
+                if (sb.length() > 0) sb.append(' ');
+                sb.append('"').append(token).append(fts5 ? "\"*" : "*\"");
+                token.setLength(0);
+            }
+        }
+        return sb.length() > 0 ? sb.toString() : null;
+    }
 
-            db.execSQL("DROP TABLE IF EXISTS " + TABLE);
-            onCreate(db);
+    /**
+     * Возвращает скомпилированный запрос; вызывать под statementLock.
+     * Если БД была переоткрыта, старые запросы закрываются и компилируются заново.
+     */
+    private SQLiteStatement statement(SQLiteDatabase db, int kind) {
+        if (statementsDb != db) {
+            closeStatements();
+            statementsDb = db;
         }
+        if (statements[kind] == null) statements[kind] = db.compileStatement(STATEMENT_SQL[kind]);
+        return statements[kind];
+    }
+
+    private void closeStatements() {
+        for (int i = 0; i < statements.length; i++) {
+            if (statements[i] != null) {
+                statements[i].close();
+                statements[i] = null;
+            }
+        }
+        statementsDb = null;
+    }
+
+    private static void bindTaskFields(SQLiteStatement st, Task task) {
+        st.bindString(1, task.getTitle());
+        if (task.getDescription() != null) st.bindString(2, task.getDescription());
+        else st.bindNull(2);
+        st.bindLong(3, task.isDone() ? 1 : 0);
+        if (task.getDueAt() > 0) st.bindLong(4, task.getDueAt());
+        else st.bindNull(4);
+    }
+
+    private static Task readTask(Cursor c) {
+        Task t = new Task(c.getLong(IDX_ID), c.getString(IDX_TITLE), c.getString(IDX_DESC),
+                c.getInt(IDX_DONE) == 1, c.getLong(IDX_CREATED));
+        t.setDueAt(c.isNull(IDX_DUE_AT) ? 0 : c.getLong(IDX_DUE_AT));
+        return t;
+    }
+
+    // Строка списка (LIST_COLUMNS): описание может быть обрезано
+    private static Task readListTask(Cursor c) {
+        Task t = readTask(c);
+        t.setDescriptionTruncated(c.getInt(IDX_DESC_TRUNCATED) == 1);
+        return t;
     }
 
     public long addTask(Task task) {
         long id = -1;
+        long start = Metrics.now();
         try {
             SQLiteDatabase db = getWritableDatabase();
-            ContentValues cv = new ContentValues();
-            cv.put(COL_TITLE, task.getTitle());
-            cv.put(COL_DESC, task.getDescription());
-            cv.put(COL_DONE, task.isDone() ? 1 : 0);
             long createdSec = (task.getCreatedAt() > 0) ? task.getCreatedAt() : (System.currentTimeMillis() / 1000L);
-            cv.put(COL_CREATED, createdSec);
-            id = db.insert(TABLE, null, cv);
+            synchronized (statementLock) {
+                SQLiteStatement st = statement(db, STMT_INSERT);
+                bindTaskFields(st, task);
+                st.bindLong(5, createdSec);
+                id = st.executeInsert();
+            }
+            if (id != -1) {
+                synchronized (cache) {
+                    DATA_VERSION.incrementAndGet();
+                    Task cached = new Task(id, task.getTitle(), task.getDescription(), task.isDone(), createdSec);
+                    cached.setDueAt(task.getDueAt());
+                    cache.put(cached);
+                }
+                afterWrite();
+            }
         } catch (Exception e) {
             Log.e(TAG, "addTask error", e);
+        } finally {
+            M_ADD.record(start);
         }
         return id;
     }
 
     public List<Task> getTasks(String search, boolean completedFirst, boolean dateDesc) {
+        return getTasks(search, completedFirst, dateDesc, null);
+    }
+
+    // cancellationSignal позволяет прервать устаревший запрос (см. TaskRepository)
+    public List<Task> getTasks(String search, boolean completedFirst, boolean dateDesc,
+                               CancellationSignal cancellationSignal) {
         List<Task> list = new ArrayList<>();
-        Cursor c = null;
+        long start = Metrics.now();
         try {
             SQLiteDatabase db = getReadableDatabase();
 
             String selection = null;
             String[] selectionArgs = null;
-            if (search != null && !search.trim().isEmpty()) {
-                selection = COL_TITLE + " LIKE ? OR " + COL_DESC + " LIKE ?";
-                String q = "%" + search.trim() + "%";
-                selectionArgs = new String[]{q, q};
+            String match = (search != null) ? toMatchQuery(search, fts5) : null;
+            if (match != null) {
+                selection = searchSelection();
+                selectionArgs = new String[]{match};
             }
 
             // ORDER BY: сначала по done (в зависимости от completedFirst), затем по created_at
-            String orderBy = (completedFirst ? (COL_DONE + " DESC") : (COL_DONE + " ASC"))
-                    + ", " + COL_CREATED + (dateDesc ? " DESC" : " ASC");
+            String orderBy = orderBy(completedFirst, dateDesc);
+
+            queryTasks(db, selection, selectionArgs, orderBy, null, cancellationSignal, list);
+        } catch (OperationCanceledException e) {
+            list.clear();
+        } catch (Exception e) {
+            Log.e(TAG, "getTasks error", e);
+        } finally {
+            M_GET_TASKS.record(start);
+        }
+        return list;
+    }
 
-            c = db.query(TABLE, null, selection, selectionArgs, null, null, orderBy);
+    /**
+     * То же, что getTasks, но строки курсора читаются сразу в столбцы TaskSnapshot,
+     * без объекта Task на каждую задачу. Для больших списков. Кэш задач не заполняется.
+     */
+    public TaskSnapshot getTaskSnapshot(String search, boolean completedFirst, boolean dateDesc,
+                                        CancellationSignal cancellationSignal) {
+        long start = Metrics.now();
+        try {
+            SQLiteDatabase db = getReadableDatabase();
+            String match = (search != null) ? toMatchQuery(search, fts5) : null;
+            TaskSnapshot.Builder b = new TaskSnapshot.Builder(0);
+            querySnapshot(db, withSearch(null, match), withSearchArgs(new String[0], match),
+                    orderBy(completedFirst, dateDesc), null, cancellationSignal, b);
+            return b.build();
+        } catch (OperationCanceledException e) {
+            return TaskSnapshot.EMPTY;
+        } catch (Exception e) {
+            Log.e(TAG, "getTaskSnapshot error", e);
+            return TaskSnapshot.EMPTY;
+        } finally {
+            M_GET_SNAPSHOT.record(start);
+        }
+    }
+
+    /**
+     * Keyset-пагинация: страница из не более чем limit задач, следующих после after
+     * в порядке orderBy(completedFirst, dateDesc). after == null — первая страница.
+     * В отличие от OFFSET, стоимость запроса не зависит от того, насколько далеко пролистан список.
+     * Строки читаются сразу в столбцы TaskSnapshot, как в getTaskSnapshot; кэш задач не заполняется
+     * (форма редактирования читает задачу по id).
+     * Ошибка чтения — null, а не пустая страница: пустая означает конец списка.
+     */
+    public TaskSnapshot getTasksPage(String search, boolean completedFirst, boolean dateDesc,
+                                     Task after, int limit, CancellationSignal cancellationSignal) {
+        long start = Metrics.now();
+        try {
+            SQLiteDatabase db = getReadableDatabase();
+            String match = (search != null) ? toMatchQuery(search, fts5) : null;
+            String orderBy = orderBy(completedFirst, dateDesc);
+            String doneOp = completedFirst ? " < ?" : " > ?";
+            TaskSnapshot.Builder page = new TaskSnapshot.Builder(limit);
+
+            if (after == null) {
+                querySnapshot(db, withSearch(null, match), withSearchArgs(new String[0], match),
+                        orderBy, String.valueOf(limit), cancellationSignal, page);
+                return page.build();
+            }
+
+            // 1) остаток текущей группы done: диапазон по индексу (done = ?, created_at <= / >= ?)
+            String done = String.valueOf(after.isDone() ? 1 : 0);
+            String created = String.valueOf(after.getCreatedAt());
+            String id = String.valueOf(after.getId());
+            String sameGroup = COL_DONE + " = ? AND " + COL_CREATED + (dateDesc ? " <= ?" : " >= ?")
+                    + " AND (" + COL_CREATED + (dateDesc ? " < ?" : " > ?")
+                    + " OR " + COL_ID + doneOp + ")";
+            querySnapshot(db, withSearch(sameGroup, match), withSearchArgs(new String[]{done, created, created, id}, match),
+                    orderBy, String.valueOf(limit), cancellationSignal, page);
+
+            // 2) если группа закончилась — начало следующей группы done
+            if (page.size() < limit) {
+                querySnapshot(db, withSearch(COL_DONE + doneOp, match), withSearchArgs(new String[]{done}, match),
+                        orderBy, String.valueOf(limit - page.size()), cancellationSignal, page);
+            }
+            return page.build();
+        } catch (OperationCanceledException e) {
+            return TaskSnapshot.EMPTY;
+        } catch (Exception e) {
+            Log.e(TAG, "getTasksPage error", e);
+            return null;
+        } finally {
+            M_GET_PAGE.record(start);
+        }
+    }
+
+    // поиск по FTS-индексу вместо LIKE '%q%' (полного сканирования таблицы)
+    private static String searchSelection() {
+        return COL_ID + " IN (SELECT rowid FROM " + FTS_TABLE + " WHERE " + FTS_TABLE + " MATCH ?)";
+    }
+
+    private static String withSearch(String selection, String match) {
+        if (match == null) return selection;
+        return (selection == null) ? searchSelection() : "(" + selection + ") AND " + searchSelection();
+    }
+
+    private static String[] withSearchArgs(String[] args, String match) {
+        if (match == null) return args.length > 0 ? args : null;
+        String[] all = new String[args.length + 1];
+        System.arraycopy(args, 0, all, 0, args.length);
+        all[args.length] = match;
+        return all;
+    }
+
+    private void queryTasks(SQLiteDatabase db, String selection, String[] selectionArgs, String orderBy,
+                            String limit, CancellationSignal cancellationSignal, List<Task> out) {
+        long version = DATA_VERSION.get();
+        int from = out.size();
+        long start = Metrics.now();
+        Cursor c = null;
+        try {
+            c = db.query(false, TABLE, LIST_COLUMNS, selection, selectionArgs, null, null, orderBy, limit,
+                    cancellationSignal);
             if (c != null && c.moveToFirst()) {
                 do {
-                    long id = c.getLong(c.getColumnIndexOrThrow(COL_ID));
-                    String title = c.getString(c.getColumnIndexOrThrow(COL_TITLE));
-                    String desc = c.getString(c.getColumnIndexOrThrow(COL_DESC));
-                    int doneInt = c.getInt(c.getColumnIndexOrThrow(COL_DONE));
-                    boolean done = (doneInt == 1);
-                    long created = 0;
-                    try {
-                        created = c.getLong(c.getColumnIndexOrThrow(COL_CREATED));
-                    } catch (Exception ex) {
-                        created = 0;
-                    }
-                    list.add(new Task(id, title, desc, done, created));
+                    out.add(readListTask(c));
                 } while (c.moveToNext());
             }
-        } catch (Exception e) {
-            Log.e(TAG, "getTasks error", e);
+            M_QUERY_ROWS.add(out.size() - from);
+            reportIfSlow(db, selection, selectionArgs, orderBy, limit, start);
+            cacheIfUnchanged(out.subList(from, out.size()), version);
         } finally {
             if (c != null) c.close();
         }
+    }
+
+    // Строки списка (LIST_COLUMNS) — прямо в столбцы снимка, без объекта Task на строку
+    private static void querySnapshot(SQLiteDatabase db, String selection, String[] selectionArgs, String orderBy,
+                                      String limit, CancellationSignal cancellationSignal, TaskSnapshot.Builder out) {
+        int from = out.size();
+        long start = Metrics.now();
+        try (Cursor c = db.query(false, TABLE, LIST_COLUMNS, selection, selectionArgs, null, null, orderBy, limit,
+                cancellationSignal)) {
+            while (c.moveToNext()) {
+                out.add(c.getLong(IDX_ID), c.getString(IDX_TITLE), c.getString(IDX_DESC),
+                        c.getInt(IDX_DESC_TRUNCATED) == 1, c.getInt(IDX_DONE) == 1, c.getLong(IDX_CREATED));
+            }
+            M_QUERY_ROWS.add(out.size() - from);
+            reportIfSlow(db, selection, selectionArgs, orderBy, limit, start);
+        }
+    }
+
+    /**
+     * Ближайший срок невыполненной задачи позже afterSec (секунды) или -1, если таких нет.
+     * Первая строка диапазона частичного индекса IDX_DUE — один спуск по дереву, сколько бы задач
+     * со сроком ни было (ORDER BY + LIMIT 1, а не MIN: с условием WHERE MIN может пройти весь диапазон).
+     */
+    public long getNextDueAt(long afterSec) {
+        long start = Metrics.now();
+        try (Cursor c = getReadableDatabase().rawQuery("SELECT " + COL_DUE + " FROM " + TABLE + " WHERE "
+                + DUE_PENDING + " AND " + COL_DUE + " > ? ORDER BY " + COL_DUE + " LIMIT 1",
+                new String[]{String.valueOf(afterSec)})) {
+            return c.moveToFirst() ? c.getLong(0) : -1;
+        } catch (Exception e) {
+            Log.e(TAG, "getNextDueAt error", e);
+            return -1;
+        } finally {
+            M_NEXT_DUE.record(start);
+        }
+    }
+
+    /**
+     * Невыполненные задачи со сроком в (afterSec, untilSec], по возрастанию срока, не больше limit:
+     * наступившие напоминания и список «скоро срок» (afterSec = 0 — вместе с просроченными).
+     * Диапазон по IDX_DUE; id в конце индекса — тай-брейк без сортировки.
+     */
+    public List<Task> getDueTasks(long afterSec, long untilSec, int limit) {
+        List<Task> list = new ArrayList<>();
+        long start = Metrics.now();
+        try {
+            queryTasks(getReadableDatabase(), DUE_PENDING + " AND " + COL_DUE + " > ? AND " + COL_DUE + " <= ?",
+                    new String[]{String.valueOf(afterSec), String.valueOf(untilSec)},
+                    COL_DUE + ", " + COL_ID, String.valueOf(limit), null, list);
+        } catch (Exception e) {
+            Log.e(TAG, "getDueTasks error", e);
+        } finally {
+            M_GET_DUE.record(start);
+        }
         return list;
     }
 
+    /**
+     * Число невыполненных задач со сроком в (afterSec, untilSec] — сколько не вошло в limit getDueTasks.
+     * Счёт по тому же диапазону IDX_DUE, строки таблицы не читаются.
+     */
+    public long countDueTasks(long afterSec, long untilSec) {
+        try {
+            return DatabaseUtils.longForQuery(getReadableDatabase(), "SELECT COUNT(*) FROM " + TABLE + " WHERE "
+                    + DUE_PENDING + " AND " + COL_DUE + " > ? AND " + COL_DUE + " <= ?",
+                    new String[]{String.valueOf(afterSec), String.valueOf(untilSec)});
+        } catch (Exception e) {
+            Log.e(TAG, "countDueTasks error", e);
+            return 0;
+        }
+    }
+
+    /**
+     * EXPLAIN QUERY PLAN запроса getDueTasks — для проверки, что он идёт по IDX_DUE.
+     */
+    public String explainDueTasks() {
+        return explain(getReadableDatabase(), "SELECT " + COL_ID + " FROM " + TABLE + " WHERE " + DUE_PENDING
+                + " AND " + COL_DUE + " > ? AND " + COL_DUE + " <= ? ORDER BY " + COL_DUE + ", " + COL_ID + " LIMIT 1",
+                new String[]{"0", "1"});
+    }
+
     // Получаем все задачи, по умолчанию новые сверху и не выполняемые первыми
     public List<Task> getAllTasks() {
         return getTasks(null, false, true);
     }
 
+    public interface RowConsumer {
+        // dueAt — секунды, 0 — без срока
+        void accept(long id, String title, String description, boolean done, long createdAt, long dueAt)
+                throws IOException;
+    }
+
+    /**
+     * Проходит по всем задачам в порядке id порциями по chunk строк (keyset по id), не собирая их
+     * в список: расход памяти не зависит от размера таблицы. Один курсор на всю таблицу здесь хуже:
+     * после переполнения CursorWindow Android перевыполняет запрос и пропускает уже прочитанные строки.
+     * Возвращает число задач.
+     */
+    public long forEachTask(int chunk, RowConsumer consumer) throws IOException {
+        long start = Metrics.now();
+        try {
+            SQLiteDatabase db = getReadableDatabase();
+            String limit = String.valueOf(chunk);
+            long lastId = 0;
+            long count = 0;
+            while (true) {
+                int rows = 0;
+                try (Cursor c = db.query(TABLE, TASK_COLUMNS, COL_ID + " > ?", new String[]{String.valueOf(lastId)},
+                        null, null, COL_ID, limit)) {
+                    while (c.moveToNext()) {
+                        lastId = c.getLong(IDX_ID);
+                        consumer.accept(lastId, c.getString(IDX_TITLE), c.getString(IDX_DESC),
+                                c.getInt(IDX_DONE) == 1, c.getLong(IDX_CREATED),
+                                c.isNull(IDX_DUE_AT) ? 0 : c.getLong(IDX_DUE_AT));
+                        rows++;
+                    }
+                }
+                count += rows;
+                if (rows < chunk) return count;
+            }
+        } finally {
+            M_FOR_EACH.record(start);
+        }
+    }
+
     public boolean updateTaskStatus(long id, boolean done) {
+        long start = Metrics.now();
         try {
             SQLiteDatabase db = getWritableDatabase();
-            ContentValues cv = new ContentValues();
-            cv.put(COL_DONE, done ? 1 : 0);
-            int rows = db.update(TABLE, cv, COL_ID + "=?", new String[]{String.valueOf(id)});
+            int rows;
+            synchronized (statementLock) {
+                SQLiteStatement st = statement(db, STMT_UPDATE_STATUS);
+                st.bindLong(1, done ? 1 : 0);
+                st.bindLong(2, id);
+                rows = st.executeUpdateDelete();
+            }
+            if (rows > 0) {
+                synchronized (cache) {
+                    DATA_VERSION.incrementAndGet();
+                    cache.updateStatus(id, done);
+                }
+                afterWrite();
+            }
             return rows > 0;
         } catch (Exception e) {
             Log.e(TAG, "updateTaskStatus error", e);
             return false;
+        } finally {
+            M_UPDATE_STATUS.record(start);
         }
     }
 
-    public boolean deleteTask(long id) {
+    /**
+     * Удаляет задачу. Возвращает версию данных, которую дало это удаление, или -1, если задача
+     * не удалена: экран сравнивает её со своей версией и так узнаёт, не было ли других записей.
+     */
+    public long deleteTask(long id) {
+        long start = Metrics.now();
         try {
             SQLiteDatabase db = getWritableDatabase();
-            int rows = db.delete(TABLE, COL_ID + "=?", new String[]{String.valueOf(id)});
-            return rows > 0;
+            int rows;
+            synchronized (statementLock) {
+                SQLiteStatement st = statement(db, STMT_DELETE);
+                st.bindLong(1, id);
+                rows = st.executeUpdateDelete();
+            }
+            long version = -1;
+            synchronized (cache) {
+                if (rows > 0) version = DATA_VERSION.incrementAndGet();
+                cache.remove(id);
+            }
+            if (rows > 0) afterWrite();
+            return version;
         } catch (Exception e) {
             Log.e(TAG, "deleteTask error", e);
+            return -1;
+        } finally {
+            M_DELETE.record(start);
+        }
+    }
+
+    // ---------- Пакетные операции: одна транзакция и один скомпилированный запрос на весь пакет ----------
+
+    /**
+     * Добавляет задачи одной транзакцией. Возвращает число добавленных задач;
+     * при ошибке транзакция откатывается целиком и возвращается 0.
+     * После коммита в переданные объекты записываются новые id (и created_at, если он не был задан):
+     * вызывающий может сослаться на добавленные задачи без повторного чтения. При откате объекты не меняются.
+     * В кэш задачи не кладутся: пакет (импорт — по IMPORT_BATCH строк) вытеснил бы из LRU то,
+     * что сейчас на экране, а новых строк там и так нет — достаточно увеличить версию данных.
+     */
+    public int addTasks(List<Task> tasks) {
+        if (tasks == null || tasks.isEmpty()) return 0;
+        long start = Metrics.now();
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            long nowSec = System.currentTimeMillis() / 1000L;
+            long[] ids = new long[tasks.size()];
+            int count = 0;
+            synchronized (statementLock) {
+                SQLiteStatement st = statement(db, STMT_INSERT);
+                db.beginTransaction();
+                try {
+                    for (int i = 0; i < ids.length; i++) {
+                        Task task = tasks.get(i);
+                        bindTaskFields(st, task);
+                        st.bindLong(5, (task.getCreatedAt() > 0) ? task.getCreatedAt() : nowSec);
+                        ids[i] = st.executeInsert();
+                        if (ids[i] != -1) count++;
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == -1) continue;
+                Task task = tasks.get(i);
+                task.setId(ids[i]);
+                if (task.getCreatedAt() <= 0) task.setCreatedAt(nowSec);
+            }
+            if (count > 0) {
+                synchronized (cache) {
+                    DATA_VERSION.incrementAndGet();
+                }
+                afterWrite();
+            }
+            return count;
+        } catch (Exception e) {
+            Log.e(TAG, "addTasks error", e);
+            return 0;
+        } finally {
+            M_ADD_BATCH.record(start);
+        }
+    }
+
+    /**
+     * Разные статусы для набора задач одной транзакцией (сброс очереди StatusWriteQueue).
+     * Возвращает false, если транзакция не была зафиксирована.
+     */
+    public boolean updateTaskStatuses(long[] ids, boolean[] done) {
+        if (ids == null || ids.length == 0) return true;
+        long start = Metrics.now();
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            int rows = 0;
+            synchronized (statementLock) {
+                SQLiteStatement st = statement(db, STMT_UPDATE_STATUS);
+                db.beginTransaction();
+                try {
+                    for (int i = 0; i < ids.length; i++) {
+                        st.bindLong(1, done[i] ? 1 : 0);
+                        st.bindLong(2, ids[i]);
+                        rows += st.executeUpdateDelete();
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+            synchronized (cache) {
+                if (rows > 0) DATA_VERSION.incrementAndGet();
+                for (int i = 0; i < ids.length; i++) cache.updateStatus(ids[i], done[i]);
+            }
+            if (rows > 0) afterWrite();
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "updateTaskStatuses error", e);
             return false;
+        } finally {
+            M_UPDATE_STATUSES.record(start);
+        }
+    }
+
+    public int updateTaskStatus(long[] ids, boolean done) {
+        if (ids == null || ids.length == 0) return 0;
+        return executeForIds(STMT_UPDATE_STATUS, ids, done ? 1 : 0, "updateTaskStatus(ids)");
+    }
+
+    public int deleteTasks(long[] ids) {
+        if (ids == null || ids.length == 0) return 0;
+        return executeForIds(STMT_DELETE, ids, -1, "deleteTasks");
+    }
+
+    // Удаляет все выполненные задачи (диапазон по индексу done), возвращает число удалённых
+    public int deleteDoneTasks() {
+        long start = Metrics.now();
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            int rows = db.delete(TABLE, COL_DONE + " = 1", null);
+            synchronized (cache) {
+                if (rows > 0) DATA_VERSION.incrementAndGet();
+                cache.removeDone();
+            }
+            if (rows > 0) afterWrite();
+            return rows;
+        } catch (Exception e) {
+            Log.e(TAG, "deleteDoneTasks error", e);
+            return 0;
+        } finally {
+            M_DELETE_DONE.record(start);
+        }
+    }
+
+    // done >= 0 — значение для первого параметра (UPDATE ... SET done = ?), id всегда последний параметр
+    private int executeForIds(int kind, long[] ids, int done, String op) {
+        Metrics.Histogram metric = kind == STMT_DELETE ? M_DELETE_BATCH : M_UPDATE_STATUS_BATCH;
+        long start = Metrics.now();
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            int rows = 0;
+            synchronized (statementLock) {
+                SQLiteStatement st = statement(db, kind);
+                db.beginTransaction();
+                try {
+                    for (long id : ids) {
+                        if (done >= 0) {
+                            st.bindLong(1, done);
+                            st.bindLong(2, id);
+                        } else {
+                            st.bindLong(1, id);
+                        }
+                        rows += st.executeUpdateDelete();
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+            synchronized (cache) {
+                if (rows > 0) DATA_VERSION.incrementAndGet();
+                for (long id : ids) {
+                    if (kind == STMT_DELETE) cache.remove(id);
+                    else cache.updateStatus(id, done == 1);
+                }
+            }
+            if (rows > 0) afterWrite();
+            return rows;
+        } catch (Exception e) {
+            Log.e(TAG, op + " error", e);
+            return 0;
+        } finally {
+            metric.record(start);
         }
     }
 
+    /**
+     * Текущая версия данных. Если она не изменилась с момента загрузки списка,
+     * перечитывать его не нужно.
+     */
+    public static long getDataVersion() {
+        return DATA_VERSION.get();
+    }
+
+    /**
+     * Кладёт прочитанные задачи в кэш, только если с начала чтения не было записей:
+     * иначе можно закэшировать строку, которую запись уже успела изменить.
+     * Записи увеличивают версию и обновляют кэш под той же блокировкой.
+     * Задачи с обрезанным описанием не кэшируются: getTaskById должен вернуть полный текст.
+     */
+    private void cacheIfUnchanged(List<Task> tasks, long version) {
+        synchronized (cache) {
+            if (DATA_VERSION.get() != version) return;
+            for (Task t : tasks) {
+                if (!t.isDescriptionTruncated()) cache.put(t);
+            }
+        }
+    }
+
+    public static TaskCache getCache() {
+        return CACHE;
+    }
+
     @Override
     public synchronized void close() {
+        synchronized (statementLock) {
+            closeStatements();
+        }
         super.close();
     }
 
     public Task getTaskById(long id) {
+        Task cached = cache.get(id);
+        if (cached != null) return cached;
+
+        long version = DATA_VERSION.get();
         Cursor c = null;
+        long start = Metrics.now();
         try {
             SQLiteDatabase db = getReadableDatabase();
-            c = db.query(TABLE, null, COL_ID + "=?", new String[]{String.valueOf(id)}, null, null, null);
+            c = db.query(TABLE, TASK_COLUMNS, COL_ID + "=?", new String[]{String.valueOf(id)}, null, null, null);
             if (c != null && c.moveToFirst()) {
-                String title = c.getString(c.getColumnIndexOrThrow(COL_TITLE));
-                String desc = c.getString(c.getColumnIndexOrThrow(COL_DESC));
-                int doneInt = c.getInt(c.getColumnIndexOrThrow(COL_DONE));
-                boolean done = (doneInt == 1);
-                long created = 0;
-                try {
-                    created = c.getLong(c.getColumnIndexOrThrow(COL_CREATED));
-                } catch (Exception ex) {
-                    created = 0;
-                }
-                return new Task(id, title, desc, done, created);
+                Task t = readTask(c);
+                cacheIfUnchanged(Collections.singletonList(t), version);
+                return t;
             }
         } catch (Exception e) {
             Log.e(TAG, "getTaskById error", e);
         } finally {
+            M_GET_BY_ID.record(start);
             if (c != null) c.close();
         }
         return null;
     }
 
     public boolean updateTask(Task task) {
+        long start = Metrics.now();
         try {
             SQLiteDatabase db = getWritableDatabase();
-            ContentValues cv = new ContentValues();
-            cv.put(COL_TITLE, task.getTitle());
-            cv.put(COL_DESC, task.getDescription());
-            cv.put(COL_DONE, task.isDone() ? 1 : 0);
-            // Не меняем created_at при обновлении
-            int rows = db.update(TABLE, cv, COL_ID + "=?", new String[]{String.valueOf(task.getId())});
+            int rows;
+            synchronized (statementLock) {
+                SQLiteStatement st = statement(db, STMT_UPDATE);
+                bindTaskFields(st, task);
+                st.bindLong(5, task.getId());
+                rows = st.executeUpdateDelete();
+            }
+            if (rows > 0) {
+                synchronized (cache) {
+                    DATA_VERSION.incrementAndGet();
+                    cache.update(task);
+                }
+                afterWrite();
+            }
             return rows > 0;
         } catch (Exception e) {
             Log.e(TAG, "updateTask error", e);
             return false;
+        } finally {
+            M_UPDATE.record(start);
         }
     }
 }
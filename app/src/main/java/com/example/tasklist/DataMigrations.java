@@ -0,0 +1,207 @@
+package com.example.tasklist;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.util.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.example.tasklist.DBHelper.COL_CREATED;
+import static com.example.tasklist.DBHelper.COL_DESC;
+import static com.example.tasklist.DBHelper.COL_ID;
+import static com.example.tasklist.DBHelper.COL_TITLE;
+import static com.example.tasklist.DBHelper.COL_UID;
+import static com.example.tasklist.DBHelper.COL_UPDATED;
+import static com.example.tasklist.DBHelper.FTS_TABLE;
+
+/**
+ * Миграции данных, вынесенные из DBHelper.onUpgrade: onUpgrade меняет только схему
+ * и ставит сюда проходы по строкам, а они выполняются в фоне порциями по CHUNK строк.
+ * <p>
+ * Каждая ожидающая миграция — строка TABLE (имя, курсор — id, до которого дошёл проход).
+ * Порция и сдвиг курсора фиксируются одной транзакцией, поэтому после гибели процесса
+ * проход продолжается с последней зафиксированной порции, а не сначала. Между порциями
+ * блокировка записи отпускается — запись с экрана ждёт не дольше одной порции.
+ * Пока миграция идёт, приложение работает со схемой новой версии: строки, до которых
+ * проход не дошёл, просто ещё не заполнены (uid — NULL, в FTS-индексе их нет). Столбцы, по которым
+ * идёт keyset-пагинация списка (created_at), сюда не выносятся: строка с NULL в ключе выпала бы
+ * из всех страниц, кроме первой, — их заполняет сам onUpgrade.
+ * Миграции выполняются по порядку ORDER: следующая может рассчитывать на результат предыдущей.
+ */
+final class DataMigrations {
+    private static final String TAG = "DataMigrations";
+
+    static final String TABLE = "schema_migrations";
+    static final int CHUNK = 2_000;
+
+    // v3: заполнение FTS-индекса существующими задачами, от новых к старым
+    static final String FTS = "fts_backfill";
+    // v6: uid и updated_at для синхронизации
+    static final String UID = "uid_backfill";
+
+    private static final long DONE = Long.MIN_VALUE;
+
+    private static final Metrics.Histogram M_CHUNK = Metrics.timer("db.migrate.chunk");
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "tasks-db-migrate");
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+    private static final AtomicBoolean SCHEDULED = new AtomicBoolean();
+
+    private DataMigrations() {
+    }
+
+    /**
+     * Один проход по таблице задач, разбитый на порции.
+     */
+    private abstract static class Migration {
+        final String name;
+        final boolean changesRows; // меняет значения, которые видит список (сбросить кэш задач)
+
+        Migration(String name, boolean changesRows) {
+            this.name = name;
+            this.changesRows = changesRows;
+        }
+
+        // Обрабатывает до limit строк после cursor; возвращает новый курсор или DONE
+        abstract long step(SQLiteDatabase db, long cursor, int limit);
+
+        // Вызывается в транзакции последней порции
+        void finish(SQLiteDatabase db) {
+        }
+    }
+
+    private static final Migration[] ORDER = {
+            new Migration(FTS, false) {
+                @Override
+                long step(SQLiteDatabase db, long cursor, int limit) {
+                    long from = DatabaseUtils.longForQuery(db, "SELECT ifnull(MIN(" + COL_ID + "), -1) FROM (SELECT "
+                            + COL_ID + " FROM " + DBHelper.TABLE + " WHERE " + COL_ID + " < ? ORDER BY " + COL_ID
+                            + " DESC LIMIT " + limit + ")", new String[]{String.valueOf(cursor)});
+                    if (from < 0) return DONE;
+                    db.execSQL("INSERT INTO " + FTS_TABLE + "(rowid, " + COL_TITLE + ", " + COL_DESC + ") SELECT "
+                            + COL_ID + ", " + COL_TITLE + ", " + COL_DESC + " FROM " + DBHelper.TABLE + " WHERE "
+                            + COL_ID + " >= ? AND " + COL_ID + " < ?", new Object[]{from, cursor});
+                    return from;
+                }
+
+                @Override
+                void finish(SQLiteDatabase db) {
+                    DBHelper.onFtsBackfilled(db);
+                }
+            },
+            new Migration(UID, false) {
+                @Override
+                long step(SQLiteDatabase db, long cursor, int limit) {
+                    long upTo = nextIdAscending(db, cursor, limit);
+                    if (upTo == DONE) return DONE;
+                    db.execSQL("UPDATE " + DBHelper.TABLE + " SET " + COL_UID + " = ifnull(" + COL_UID + ", "
+                            + DBHelper.NEW_UID_SQL + "), " + COL_UPDATED + " = ifnull(" + COL_UPDATED + ", ifnull("
+                            + COL_CREATED + " * 1000, " + DBHelper.NOW_MS_SQL + ")) WHERE " + COL_ID + " > ? AND "
+                            + COL_ID + " <= ? AND (" + COL_UID + " IS NULL OR " + COL_UPDATED + " IS NULL)",
+                            new Object[]{cursor, upTo});
+                    return upTo;
+                }
+            },
+    };
+
+    // id последней строки порции из limit строк после cursor (по возрастанию id)
+    private static long nextIdAscending(SQLiteDatabase db, long cursor, int limit) {
+        long upTo = DatabaseUtils.longForQuery(db, "SELECT ifnull(MAX(" + COL_ID + "), -1) FROM (SELECT " + COL_ID
+                + " FROM " + DBHelper.TABLE + " WHERE " + COL_ID + " > ? ORDER BY " + COL_ID + " LIMIT " + limit + ")",
+                new String[]{String.valueOf(cursor)});
+        return upTo < 0 ? DONE : upTo;
+    }
+
+    static void createTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE + " (name TEXT PRIMARY KEY, cursor INTEGER NOT NULL);");
+    }
+
+    // Ставит миграцию в очередь (из onUpgrade); начальный курсор — откуда начинать проход
+    static void schedule(SQLiteDatabase db, String name, long cursor) {
+        db.execSQL("INSERT OR IGNORE INTO " + TABLE + " (name, cursor) VALUES (?, ?)", new Object[]{name, cursor});
+    }
+
+    /**
+     * Условие для триггеров FTS: строка с этим id уже в индексе (проход FTS до неё дошёл или не нужен).
+     */
+    static String ftsIndexed(String idExpr) {
+        return "NOT EXISTS (SELECT 1 FROM " + TABLE + " WHERE name = '" + FTS + "' AND " + idExpr + " < cursor)";
+    }
+
+    static long pendingCount(DBHelper helper) {
+        return DatabaseUtils.queryNumEntries(helper.getReadableDatabase(), TABLE);
+    }
+
+    /**
+     * Запускает ожидающие миграции в фоновом потоке, если они есть и ещё не запущены.
+     * Если БД закроют посреди прохода, он остановится и продолжится при следующем вызове.
+     * done вызывается в фоновом потоке по окончании — только если проход запущен (вернулось true).
+     */
+    static boolean resumeInBackground(DBHelper helper, Runnable done) {
+        if (!SCHEDULED.compareAndSet(false, true)) return false;
+        EXECUTOR.execute(() -> {
+            try {
+                if (pendingCount(helper) > 0) runPending(helper, Integer.MAX_VALUE);
+            } catch (Exception e) {
+                Log.w(TAG, "data migration interrupted, will resume on next open", e);
+            } finally {
+                SCHEDULED.set(false);
+                done.run();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Выполняет до maxChunks порций ожидающих миграций в текущем потоке.
+     * Возвращает true, если ожидающих миграций не осталось.
+     */
+    static boolean runPending(DBHelper helper, int maxChunks) {
+        int chunks = 0;
+        for (Migration m : ORDER) {
+            while (chunks < maxChunks) {
+                chunks++;
+                if (runChunk(helper, m)) break;
+            }
+        }
+        return pendingCount(helper) == 0;
+    }
+
+    // true — миграция m завершена (или не ожидалась)
+    private static boolean runChunk(DBHelper helper, Migration m) {
+        long start = Metrics.now();
+        SQLiteDatabase db = helper.getWritableDatabase();
+        boolean done;
+        long cursor;
+        db.beginTransaction();
+        try {
+            try {
+                cursor = DatabaseUtils.longForQuery(db, "SELECT cursor FROM " + TABLE + " WHERE name = ?",
+                        new String[]{m.name});
+            } catch (SQLiteDoneException e) {
+                return true;
+            }
+            long next = m.step(db, cursor, CHUNK);
+            done = next == DONE;
+            if (done) {
+                m.finish(db);
+                db.execSQL("DELETE FROM " + TABLE + " WHERE name = ?", new Object[]{m.name});
+            } else {
+                db.execSQL("UPDATE " + TABLE + " SET cursor = ? WHERE name = ?", new Object[]{next, m.name});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            M_CHUNK.record(start);
+        }
+        if (m.changesRows) helper.onBulkWrite();
+        if (done) Log.i(TAG, m.name + " done");
+        return done;
+    }
+}
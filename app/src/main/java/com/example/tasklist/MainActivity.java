@@ -2,32 +2,70 @@ package com.example.tasklist;
 
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.DividerItemDecoration;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.View;
-import android.widget.AdapterView;
+import android.view.ViewTreeObserver;
+import android.view.inputmethod.EditorInfo;
 import android.widget.Button;
 import android.widget.CheckBox;
 import android.widget.EditText;
-import android.widget.ListView;
+import android.widget.PopupMenu;
+import android.widget.TextView;
 import android.widget.Toast;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
 
-public class MainActivity extends AppCompatActivity {
-    private DBHelper dbHelper;
+public class MainActivity extends AppCompatActivity implements TaskAdapter.Listener {
+    private TaskRepository repository;
     private TaskAdapter adapter;
-    private ListView listView;
+    private TaskPager pager;
+    private RecyclerView rvTasks;
+    private LinearLayoutManager layoutManager;
     private CheckBox cbFilter;
     private EditText etSearch;
     private Button btnSearch;
     private CheckBox cbDateDesc;
+    private View mainBar;
+    private View selectionBar;
+    private Button btnDeleteSelected;
+    private TextView tvCounts;
 
     private static final int REQ_ADD = 1001;
+    private static final int REQ_EXPORT_NDJSON = 1002;
+    private static final int REQ_EXPORT_BINARY = 1003;
+    private static final int REQ_IMPORT = 1004;
+    // Пункты меню «Ещё» — отдельно от кодов запросов: перенумерация меню не ломает onActivityResult
+    private static final int MENU_DUE_SOON = 1;
+    private static final int MENU_EXPORT_NDJSON = 2;
+    private static final int MENU_EXPORT_BINARY = 3;
+    private static final int MENU_IMPORT = 4;
+    private static final long DUE_SOON_SEC = 7 * 24 * 3600; // «скоро» — в ближайшую неделю
+    private static final int DUE_SOON_LIMIT = 100;
+    private static final int PREFETCH_DISTANCE = 10; // за сколько строк до конца подгружать следующую страницу
+    private static final long SEARCH_DEBOUNCE_MS = 300; // пауза в наборе, после которой запускается поиск
+    private static final long BULK_RELOAD_DELAY_MS = 500; // пауза после пакетной записи в обход экрана
     private static final String TAG = "MainActivity";
+    private static final String BENCHMARK_ACTIVITY = "com.example.tasklist.BenchmarkActivity";
+    private static final Metrics.Histogram M_LOAD = Metrics.timer("ui.loadTasks");
+    private static final Metrics.Histogram M_VIEW = Metrics.timer("ui.updateViewInMemory");
+    // холодный старт: от onCreate до первого кадра и до списка из БД
+    private static final Metrics.Histogram M_FIRST_FRAME = Metrics.timer("ui.startup.firstFrame");
+    private static final Metrics.Histogram M_FULLY_LOADED = Metrics.timer("ui.startup.fullyLoaded");
     private static final String KEY_FILTER = "key_filter_checked";
     private static final String KEY_SEARCH = "key_search";
     private static final String KEY_DATE_DESC = "key_date_desc";
@@ -37,18 +75,40 @@ public class MainActivity extends AppCompatActivity {
     private boolean dateDesc = true; // cbDateDesc (true = newest first)
     private String searchQuery = null; // etSearch
 
+    // Версия данных БД, которой соответствует показанный список (-1 — ещё ничего не загружено)
+    private long renderedVersion = -1;
+    // Поиск, которому соответствует показанный список
+    private String renderedSearch = null;
+    // Версия данных, для которой уже запущена загрузка (чтобы onResume не запускал её повторно)
+    private long requestedVersion = -1;
+    // Начало onCreate, пока первая страница из БД ещё не показана (0 — уже показана)
+    private long startupStart = 0;
+
+    // Отложенные действия: поиск — после паузы в наборе, перечитывание — после серии пакетных записей
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable searchRunnable = this::applySearch;
+    private final Runnable bulkReloadRunnable = () -> {
+        long version = repository.getDataVersion();
+        if (renderedVersion != version && requestedVersion != version) loadTasks();
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        startupStart = Metrics.now();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        dbHelper = new DBHelper(this);
-        listView = findViewById(R.id.listView);
+        repository = new TaskRepository(this);
+        rvTasks = findViewById(R.id.rvTasks);
         Button btnAdd = findViewById(R.id.btnAdd);
         cbFilter = findViewById(R.id.cbFilter);
         etSearch = findViewById(R.id.etSearch);
         btnSearch = findViewById(R.id.btnSearch);
         cbDateDesc = findViewById(R.id.cbDateDesc);
+        mainBar = findViewById(R.id.mainBar);
+        selectionBar = findViewById(R.id.selectionBar);
+        btnDeleteSelected = findViewById(R.id.btnDeleteSelected);
+        tvCounts = findViewById(R.id.tvCounts);
 
         // Восстанавливаем состояние при пересоздании
         if (savedInstanceState != null) {
@@ -71,51 +131,124 @@ public class MainActivity extends AppCompatActivity {
 
         cbFilter.setOnCheckedChangeListener((buttonView, isChecked) -> {
             filterCompletedFirst = isChecked;
-            loadTasks();
+            updateView();
         });
 
         cbDateDesc.setOnCheckedChangeListener((buttonView, isChecked) -> {
             dateDesc = isChecked;
-            loadTasks();
+            updateView();
         });
 
-        btnSearch.setOnClickListener(v -> {
-            searchQuery = etSearch.getText().toString().trim();
-            if (searchQuery != null && searchQuery.isEmpty()) searchQuery = null;
-            loadTasks();
+        etSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                mainHandler.removeCallbacks(searchRunnable);
+                mainHandler.postDelayed(searchRunnable, SEARCH_DEBOUNCE_MS);
+            }
         });
 
-        // Открыть задачу для редактирования при коротком нажатии
-        listView.setOnItemClickListener((parent, view, position, id) -> {
-            Object obj = parent.getItemAtPosition(position);
-            if (!(obj instanceof Task)) {
-                Toast.makeText(MainActivity.this, "Не удалось определить задачу", Toast.LENGTH_SHORT).show();
-                return;
+        // кнопка и клавиша поиска — без ожидания паузы
+        btnSearch.setOnClickListener(v -> applySearch());
+        etSearch.setOnEditorActionListener((v, actionId, event) -> {
+            if (actionId != EditorInfo.IME_ACTION_SEARCH) return false;
+            applySearch();
+            return true;
+        });
+
+        // Множественный выбор и пакетные операции (одна транзакция на весь набор)
+        findViewById(R.id.btnSelect).setOnClickListener(v -> adapter.setSelectionMode(true));
+        findViewById(R.id.btnCancelSelection).setOnClickListener(v -> adapter.setSelectionMode(false));
+        findViewById(R.id.btnMarkDone).setOnClickListener(v -> updateSelectedStatus(true));
+        findViewById(R.id.btnMarkUndone).setOnClickListener(v -> updateSelectedStatus(false));
+        btnDeleteSelected.setOnClickListener(v -> deleteSelected());
+        findViewById(R.id.btnMore).setOnClickListener(this::showMoreMenu);
+        findViewById(R.id.btnClearDone).setOnClickListener(v -> new AlertDialog.Builder(MainActivity.this)
+                .setTitle("Удалить все выполненные задачи?")
+                .setPositiveButton("Удалить", (dialog, which) -> {
+                    adapter.flushPendingStatus(); // только что отмеченные задачи тоже должны удалиться
+                    repository.deleteDoneTasks(rows -> {
+                        Toast.makeText(MainActivity.this, "Удалено задач: " + rows, Toast.LENGTH_SHORT).show();
+                        if (rows > 0) loadTasks();
+                    });
+                })
+                .setNegativeButton("Отмена", null)
+                .show());
+
+        // Отладочная сборка: долгое нажатие на заголовок открывает экран замеров производительности
+        // (он есть только в src/debug, поэтому по имени класса)
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            findViewById(R.id.tvHeader).setOnLongClickListener(v -> {
+                startActivity(new Intent().setClassName(MainActivity.this, BENCHMARK_ACTIVITY));
+                return true;
+            });
+        }
+
+        layoutManager = new LinearLayoutManager(this);
+        rvTasks.setLayoutManager(layoutManager);
+        rvTasks.addItemDecoration(new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
+        adapter = new TaskAdapter(this, repository, this);
+        rvTasks.setAdapter(adapter);
+
+        // Подгрузка следующей страницы при приближении к концу списка
+        rvTasks.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int total = adapter.getItemCount();
+                if (pager != null && total > 0
+                        && layoutManager.findLastVisibleItemPosition() >= total - 1 - PREFETCH_DISTANCE) {
+                    pager.loadMore();
+                }
             }
-            Task task = (Task) obj;
-            Intent i = new Intent(MainActivity.this, AddTaskActivity.class);
-            i.putExtra(AddTaskActivity.EXTRA_TASK_ID, task.getId());
-            startActivityForResult(i, REQ_ADD);
         });
 
-        // Удаление при долгом нажатии
-        listView.setOnItemLongClickListener((parent, view, position, id) -> {
-            Object obj = parent.getItemAtPosition(position);
-            if (!(obj instanceof Task)) {
-                Toast.makeText(MainActivity.this, "Невозможно определить задачу", Toast.LENGTH_SHORT).show();
+        // Первый кадр — из сохранённого начала списка, без обращения к БД. Сам список загрузит onResume
+        // (соединение с БД откроется в фоновом потоке) и заменит сохранённый через diff
+        if (savedInstanceState == null) {
+            TaskSnapshot saved = StartupSnapshot.load(this, filterCompletedFirst, dateDesc);
+            if (saved != null) adapter.submit(saved);
+        }
+        final long start = startupStart;
+        rvTasks.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                rvTasks.getViewTreeObserver().removeOnPreDrawListener(this);
+                M_FIRST_FRAME.record(start);
                 return true;
             }
-            Task task = (Task) obj;
-            new AlertDialog.Builder(MainActivity.this)
-                    .setTitle("Удалить задачу")
-                    .setMessage("\"" + task.getTitle() + "\"?")
-                    .setPositiveButton("Удалить", (dialog, which) -> {
-                        try {
-                            boolean ok = dbHelper.deleteTask(task.getId());
-                            if (ok) {
-                                if (adapter != null) {
-                                    adapter.remove(task);
-                                    adapter.notifyDataSetChanged();
+        });
+    }
+
+    // Открыть задачу для редактирования при коротком нажатии
+    @Override
+    public void onTaskClick(Task task) {
+        Intent i = new Intent(MainActivity.this, AddTaskActivity.class);
+        i.putExtra(AddTaskActivity.EXTRA_TASK_ID, task.getId());
+        startActivityForResult(i, REQ_ADD);
+    }
+
+    // Удаление при долгом нажатии
+    @Override
+    public void onTaskLongClick(Task task) {
+        new AlertDialog.Builder(MainActivity.this)
+                .setTitle("Удалить задачу")
+                .setMessage("\"" + task.getTitle() + "\"?")
+                .setPositiveButton("Удалить", (dialog, which) ->
+                        repository.deleteTask(task.getId(), version -> {
+                            if (version != -1) {
+                                adapter.remove(task.getId());
+                                refreshCounts();
+                                // список соответствует БД, только если кроме этого удаления ничего
+                                // не записывалось (как в onActivityResult); иначе — перечитать
+                                if (renderedVersion != -1 && version == renderedVersion + 1) {
+                                    renderedVersion = version;
                                 } else {
                                     loadTasks();
                                 }
@@ -123,45 +256,298 @@ public class MainActivity extends AppCompatActivity {
                             } else {
                                 Toast.makeText(MainActivity.this, "Ошибка при удалении", Toast.LENGTH_SHORT).show();
                             }
-                        } catch (Exception e) {
-                            Log.e(TAG, "Ошибка при удалении задачи", e);
-                            Toast.makeText(MainActivity.this, "Исключение при удалении", Toast.LENGTH_SHORT).show();
-                        }
-                    })
-                    .setNegativeButton("Отмена", null)
-                    .show();
-            return true; // событие обработано
+                        }))
+                .setNegativeButton("Отмена", null)
+                .show();
+    }
+
+    @Override
+    public void onSelectionChanged(int selectedCount) {
+        boolean selecting = adapter.isSelectionMode();
+        mainBar.setVisibility(selecting ? View.GONE : View.VISIBLE);
+        selectionBar.setVisibility(selecting ? View.VISIBLE : View.GONE);
+        btnDeleteSelected.setText(selectedCount > 0 ? "Удалить (" + selectedCount + ")" : "Удалить");
+    }
+
+    @Override
+    public void onStatusSaved() {
+        refreshCounts();
+    }
+
+    /**
+     * Заголовок со счётчиками: одна строка из таблицы статистики (DBHelper.getStats),
+     * стоимость не зависит от числа задач.
+     */
+    private void refreshCounts() {
+        repository.getStats(stats -> {
+            if (stats == null) return;
+            tvCounts.setText(String.format(Locale.getDefault(), "Всего: %d · выполнено: %d · осталось: %d",
+                    stats.getTotal(), stats.getDone(), stats.getPending()));
         });
+    }
+
+    private void updateSelectedStatus(boolean done) {
+        long[] ids = adapter.getSelectedIds();
+        if (ids.length == 0) return;
+        adapter.flushPendingStatus(); // отложенные переключения должны записаться раньше пакетной операции
+        repository.updateTaskStatus(ids, done, rows -> {
+            adapter.setSelectionMode(false);
+            loadTasks();
+        });
+    }
 
-        loadTasks();
+    private void deleteSelected() {
+        long[] ids = adapter.getSelectedIds();
+        if (ids.length == 0) return;
+        new AlertDialog.Builder(MainActivity.this)
+                .setTitle("Удалить выбранные задачи (" + ids.length + ")?")
+                .setPositiveButton("Удалить", (dialog, which) -> {
+                    adapter.flushPendingStatus();
+                    repository.deleteTasks(ids, rows -> {
+                        Toast.makeText(MainActivity.this, "Удалено задач: " + rows, Toast.LENGTH_SHORT).show();
+                        adapter.setSelectionMode(false);
+                        loadTasks();
+                    });
+                })
+                .setNegativeButton("Отмена", null)
+                .show();
     }
 
     /**
      * Загружает задачи с учётом состояния фильтра/поиска/сортировки и обновляет адаптер.
+     * Сразу загружается только первая страница, остальные — по мере прокрутки (см. TaskPager).
      */
     private void loadTasks() {
-        try {
-            List<Task> tasks = dbHelper.getTasks(searchQuery, filterCompletedFirst, dateDesc);
-            if (tasks == null) tasks = new ArrayList<>();
+        // версию фиксируем до запроса: если запись произойдёт во время загрузки, список перечитается
+        final long version = repository.getDataVersion();
+        final String search = searchQuery;
+        final long start = Metrics.now();
+        requestedVersion = version;
+        // перечитываем столько строк, сколько уже показано, чтобы не терять прокрутку
+        int initialSize = Math.max(TaskPager.PAGE_SIZE, adapter.getItemCount());
+        pager = new TaskPager(repository, searchQuery, filterCompletedFirst, dateDesc, initialSize,
+                new TaskPager.Listener() {
+                    @Override
+                    public void onPage(TaskSnapshot page, boolean first) {
+                        try {
+                            if (first) {
+                                // список сравнивается со старым в фоне, перерисовываются только изменённые строки
+                                adapter.submit(page);
+                                renderedVersion = version;
+                                renderedSearch = search;
+                                M_LOAD.record(start);
+                                refreshCounts();
+                                if (startupStart != 0) {
+                                    M_FULLY_LOADED.record(startupStart);
+                                    startupStart = 0;
+                                    reportFullyDrawn();
+                                }
+                            } else {
+                                adapter.append(page);
+                            }
+                        } catch (Exception e) {
+                            Log.e(TAG, "loadTasks error", e);
+                            Toast.makeText(MainActivity.this, "Ошибка при загрузке задач", Toast.LENGTH_SHORT).show();
+                        }
+                    }
+
+                    @Override
+                    public void onError(boolean first) {
+                        if (!first) return; // следующую страницу пейджер запросит снова при прокрутке
+                        // версия не показана — onResume попробует загрузить список ещё раз
+                        if (requestedVersion == version) requestedVersion = -1;
+                        Toast.makeText(MainActivity.this, "Ошибка при загрузке задач", Toast.LENGTH_SHORT).show();
+                    }
+                });
+        pager.start();
+    }
+
+    private void applySearch() {
+        mainHandler.removeCallbacks(searchRunnable);
+        String query = etSearch.getText().toString().trim();
+        if (query.isEmpty()) query = null;
+        // запрос с тем же набором слов (например, добавлен пробел) даёт тот же результат
+        boolean same = TaskView.narrows(searchQuery, query) && TaskView.narrows(query, searchQuery);
+        searchQuery = query;
+        if (!same) updateView();
+    }
+
+    /**
+     * Применяет новые сортировку/поиск. Если показан весь результат и данные с тех пор не менялись,
+     * список пересортировывается и фильтруется в памяти (см. TaskView), иначе — запрос к БД.
+     */
+    private void updateView() {
+        boolean complete = pager != null && pager.isComplete()
+                && renderedVersion == repository.getDataVersion();
+        if (!complete || !TaskView.narrows(renderedSearch, searchQuery)) {
+            loadTasks();
+            return;
+        }
+        final long version = renderedVersion;
+        final String search = searchQuery;
+        final long start = Metrics.now();
+        repository.getTaskView(adapter.getSnapshot(), renderedSearch, search, filterCompletedFirst, dateDesc,
+                snapshot -> {
+                    if (snapshot == null || version != repository.getDataVersion()) {
+                        loadTasks();
+                        return;
+                    }
+                    adapter.submit(snapshot);
+                    renderedSearch = search;
+                    M_VIEW.record(start);
+                });
+    }
+
+    // Задачи со сроком и резервная копия: экспорт/импорт задач в файл, выбранный через системный диалог
+    private void showMoreMenu(View anchor) {
+        PopupMenu menu = new PopupMenu(this, anchor);
+        menu.getMenu().add(0, MENU_DUE_SOON, 0, "Скоро срок");
+        menu.getMenu().add(0, MENU_EXPORT_NDJSON, 1, "Экспорт (NDJSON)");
+        menu.getMenu().add(0, MENU_EXPORT_BINARY, 2, "Экспорт (компактный)");
+        menu.getMenu().add(0, MENU_IMPORT, 3, "Импорт");
+        menu.setOnMenuItemClickListener(item -> {
+            int itemId = item.getItemId();
+            if (itemId == MENU_DUE_SOON) {
+                showDueSoon();
+                return true;
+            }
+            if (itemId == MENU_IMPORT) {
+                startActivityForResult(new Intent(Intent.ACTION_OPEN_DOCUMENT)
+                        .addCategory(Intent.CATEGORY_OPENABLE).setType("*/*"), REQ_IMPORT);
+                return true;
+            }
+            boolean ndjson = itemId == MENU_EXPORT_NDJSON;
+            if (!ndjson && itemId != MENU_EXPORT_BINARY) return false;
+            Intent i = new Intent(Intent.ACTION_CREATE_DOCUMENT).addCategory(Intent.CATEGORY_OPENABLE)
+                    .setType(ndjson ? "application/x-ndjson" : "application/octet-stream")
+                    .putExtra(Intent.EXTRA_TITLE, ndjson ? "tasks.ndjson" : "tasks.tskb");
+            startActivityForResult(i, ndjson ? REQ_EXPORT_NDJSON : REQ_EXPORT_BINARY);
+            return true;
+        });
+        menu.show();
+    }
+
+    // Невыполненные задачи со сроком в ближайшую неделю (и просроченные) — запрос по индексу срока
+    private void showDueSoon() {
+        repository.getDueSoon(DUE_SOON_SEC, DUE_SOON_LIMIT, tasks -> {
+            if (tasks.isEmpty()) {
+                Toast.makeText(this, "Ближайших сроков нет", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            SimpleDateFormat format = new SimpleDateFormat("dd.MM HH:mm", Locale.getDefault());
+            long now = System.currentTimeMillis() / 1000L;
+            String[] items = new String[tasks.size()];
+            for (int i = 0; i < items.length; i++) {
+                Task t = tasks.get(i);
+                items[i] = format.format(new Date(t.getDueAt() * 1000L)) + (t.getDueAt() < now ? " (просрочена) " : "  ")
+                        + t.getTitle();
+            }
+            new AlertDialog.Builder(this)
+                    .setTitle("Скоро срок")
+                    .setItems(items, (d, which) -> onTaskClick(tasks.get(which)))
+                    .setNegativeButton("Закрыть", null)
+                    .show();
+        });
+    }
 
-            if (adapter == null) {
-                adapter = new TaskAdapter(this, tasks, dbHelper);
-                listView.setAdapter(adapter);
+    private void transfer(int requestCode, Uri uri) {
+        AlertDialog dialog = new AlertDialog.Builder(this)
+                .setTitle(requestCode == REQ_IMPORT ? "Импорт задач" : "Экспорт задач")
+                .setMessage("Подготовка…")
+                .setCancelable(false)
+                .show();
+        TaskTransfer.Progress progress = (rows, bytes) -> dialog.setMessage(
+                String.format(Locale.getDefault(), "Задач: %d (%.1f МБ)", rows, bytes / (1024.0 * 1024.0)));
+        try {
+            if (requestCode == REQ_IMPORT) {
+                adapter.flushPendingStatus();
+                repository.importTasks(getContentResolver().openInputStream(uri), progress, rows -> {
+                    dialog.dismiss();
+                    Toast.makeText(this, rows >= 0 ? "Импортировано задач: " + rows : "Ошибка при импорте",
+                            Toast.LENGTH_LONG).show();
+                    loadTasks();
+                });
             } else {
-                adapter.clear();
-                adapter.addAll(tasks);
-                adapter.notifyDataSetChanged();
+                TaskTransfer.Format format = requestCode == REQ_EXPORT_NDJSON
+                        ? TaskTransfer.Format.NDJSON : TaskTransfer.Format.BINARY;
+                repository.exportTasks(getContentResolver().openOutputStream(uri, "wt"), format, progress, rows -> {
+                    dialog.dismiss();
+                    Toast.makeText(this, rows >= 0 ? "Экспортировано задач: " + rows : "Ошибка при экспорте",
+                            Toast.LENGTH_LONG).show();
+                });
+            }
+        } catch (IOException | SecurityException e) {
+            Log.e(TAG, "transfer error", e);
+            dialog.dismiss();
+            Toast.makeText(this, "Не удалось открыть файл", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == REQ_EXPORT_NDJSON || requestCode == REQ_EXPORT_BINARY || requestCode == REQ_IMPORT) {
+            if (resultCode == RESULT_OK && data != null && data.getData() != null) {
+                transfer(requestCode, data.getData());
             }
-        } catch (Exception e) {
-            Log.e(TAG, "loadTasks error", e);
-            Toast.makeText(this, "Ошибка при загрузке задач", Toast.LENGTH_SHORT).show();
+            return;
         }
+        if (requestCode != REQ_ADD || resultCode != RESULT_OK || data == null) return;
+        long id = data.getLongExtra(AddTaskActivity.EXTRA_TASK_ID, -1);
+        long version = data.getLongExtra(AddTaskActivity.EXTRA_DATA_VERSION, -1);
+        // Патч возможен, только если кроме этого сохранения ничего не менялось;
+        // иначе (и при активном поиске) onResume перечитает список целиком
+        if (id == -1 || searchQuery != null || renderedVersion == -1 || version != renderedVersion + 1) return;
+
+        // Изменилась одна задача — вместо полной перезагрузки обновляем только её строку
+        renderedVersion = version;
+        repository.getTaskById(id, this::applyTaskPatch);
+        refreshCounts();
+    }
+
+    /**
+     * Заменяет (или вставляет) задачу в показанном списке на место, соответствующее сортировке.
+     */
+    private void applyTaskPatch(Task task) {
+        if (task == null) return;
+        TaskSnapshot snapshot = adapter.getSnapshot().without(task.getId());
+        int pos = snapshot.insertionPoint(task, filterCompletedFirst, dateDesc);
+        // за пределами загруженного окна задачу добавит следующая страница
+        if (pos < snapshot.size() || pager == null || pager.isComplete()) {
+            snapshot = snapshot.withInserted(pos, task);
+            if (pager != null) pager.forget(task.getId());
+        }
+        adapter.submit(snapshot);
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        loadTasks(); // обновляем список
+        // перечитываем список только если данные изменились с момента последней загрузки
+        // и загрузка этой версии ещё не запущена (первая загрузка экрана тоже идёт отсюда)
+        long version = repository.getDataVersion();
+        if (renderedVersion != version && requestedVersion != version) loadTasks();
+        // пока экран виден, записи в обход репозитория (миграция, синхронизация) тоже перечитывают список
+        repository.setOnBulkWrite(this::reloadIfChanged);
+    }
+
+    // Серия пакетных записей подряд (порции миграции) схлопывается в одну загрузку
+    private void reloadIfChanged() {
+        mainHandler.removeCallbacks(bulkReloadRunnable);
+        mainHandler.postDelayed(bulkReloadRunnable, BULK_RELOAD_DELAY_MS);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        repository.setOnBulkWrite(null);
+        mainHandler.removeCallbacks(bulkReloadRunnable);
+        // несохранённые переключения статуса записываются до ухода с экрана
+        adapter.flushPendingStatus();
+        // начало списка — для первого кадра следующего холодного старта
+        if (searchQuery == null && renderedVersion != -1) {
+            StartupSnapshot.save(this, adapter.getSnapshot(), filterCompletedFirst, dateDesc);
+        }
     }
 
     @Override
@@ -175,6 +561,7 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (dbHelper != null) dbHelper.close();
+        mainHandler.removeCallbacks(searchRunnable);
+        if (repository != null) repository.close();
     }
 }
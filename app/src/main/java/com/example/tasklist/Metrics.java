@@ -0,0 +1,285 @@
+package com.example.tasklist;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Метрики горячих путей (общие на процесс): гистограммы задержек операций БД, загрузки списка
+ * и привязки строк, число строк в ответах запросов и журнал медленных запросов с планом.
+ * Запись в гистограмму не выделяет памяти и не берёт блокировок, поэтому годится и для bind.
+ * Просмотр — MetricsActivity (отладочная сборка), выгрузка — writeReport.
+ */
+public final class Metrics {
+    private static final String TAG = "Metrics";
+    private static final int SLOW_LOG_SIZE = 50;
+
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<>();
+    private static final ArrayDeque<SlowQuery> SLOW_QUERIES = new ArrayDeque<>();
+    private static volatile long slowQueryMs = 50;
+
+    private Metrics() {
+    }
+
+    /**
+     * Гистограмма по имени; создаётся при первом обращении. Вызывающие держат ссылку
+     * в static final поле, чтобы не искать её при каждой записи.
+     */
+    public static Histogram histogram(String name, String unit) {
+        Histogram h = HISTOGRAMS.get(name);
+        if (h == null) {
+            Histogram created = new Histogram(name, unit);
+            h = HISTOGRAMS.putIfAbsent(name, created);
+            if (h == null) h = created;
+        }
+        return h;
+    }
+
+    // Гистограмма задержек в микросекундах
+    public static Histogram timer(String name) {
+        return histogram(name, "us");
+    }
+
+    public static long now() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    public static long getSlowQueryMs() {
+        return slowQueryMs;
+    }
+
+    // Порог, начиная с которого запрос попадает в журнал медленных (0 — журнал выключен)
+    public static void setSlowQueryMs(long ms) {
+        slowQueryMs = Math.max(0, ms);
+    }
+
+    public static boolean isSlow(long startNanos) {
+        long threshold = slowQueryMs;
+        return threshold > 0 && (now() - startNanos) >= threshold * 1_000_000L;
+    }
+
+    /**
+     * Медленный запрос: пишется в лог и хранится в последних SLOW_LOG_SIZE записях.
+     */
+    public static void reportSlowQuery(String sql, String[] args, long startNanos, String plan) {
+        SlowQuery q = new SlowQuery(System.currentTimeMillis(), (now() - startNanos) / 1_000_000.0, sql,
+                args != null ? TextUtils.join(", ", args) : "", plan);
+        Log.w(TAG, String.format(Locale.ROOT, "slow query %.1f ms: %s [%s]\n%s", q.ms, q.sql, q.args, q.plan));
+        synchronized (SLOW_QUERIES) {
+            if (SLOW_QUERIES.size() == SLOW_LOG_SIZE) SLOW_QUERIES.removeFirst();
+            SLOW_QUERIES.addLast(q);
+        }
+    }
+
+    public static void reset() {
+        for (Histogram h : HISTOGRAMS.values()) h.reset();
+        synchronized (SLOW_QUERIES) {
+            SLOW_QUERIES.clear();
+        }
+    }
+
+    /**
+     * Текстовая сводка для экрана метрик.
+     */
+    public static String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Histogram h : sortedHistograms()) {
+            if (h.getCount() == 0) continue;
+            sb.append(String.format(Locale.ROOT, "%-28s n=%-7d p50=%-7d p95=%-7d p99=%-7d max=%d %s%n",
+                    h.name, h.getCount(), h.percentile(50), h.percentile(95), h.percentile(99), h.getMax(), h.unit));
+        }
+        List<SlowQuery> slow = slowQueries();
+        if (!slow.isEmpty()) {
+            sb.append("\nМедленные запросы (≥ ").append(slowQueryMs).append(" мс):\n");
+            for (SlowQuery q : slow) {
+                sb.append(String.format(Locale.ROOT, "%.1f ms  %s [%s]%n%s%n%n", q.ms, q.sql, q.args, q.plan));
+            }
+        }
+        return sb.length() > 0 ? sb.toString() : "Нет данных";
+    }
+
+    public static JSONObject toJson() throws JSONException {
+        JSONArray histograms = new JSONArray();
+        for (Histogram h : sortedHistograms()) {
+            if (h.getCount() == 0) continue;
+            JSONObject o = new JSONObject();
+            o.put("name", h.name);
+            o.put("unit", h.unit);
+            o.put("count", h.getCount());
+            o.put("mean", h.getMean());
+            o.put("p50", h.percentile(50));
+            o.put("p95", h.percentile(95));
+            o.put("p99", h.percentile(99));
+            o.put("max", h.getMax());
+            histograms.put(o);
+        }
+        JSONArray slow = new JSONArray();
+        for (SlowQuery q : slowQueries()) {
+            JSONObject o = new JSONObject();
+            o.put("time", q.time);
+            o.put("ms", q.ms);
+            o.put("sql", q.sql);
+            o.put("args", q.args);
+            o.put("plan", q.plan);
+            slow.put(o);
+        }
+        JSONObject report = new JSONObject();
+        report.put("timestamp", System.currentTimeMillis());
+        report.put("slow_query_ms", slowQueryMs);
+        report.put("histograms", histograms);
+        report.put("slow_queries", slow);
+        return report;
+    }
+
+    /**
+     * Сохраняет снимок метрик в JSON-файл рядом с отчётами замеров и возвращает его.
+     */
+    public static File writeReport(Context context) throws IOException, JSONException {
+        JSONObject report = toJson();
+        File dir = context.getExternalFilesDir("metrics");
+        if (dir == null) dir = new File(context.getFilesDir(), "metrics");
+        if (!dir.exists() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        File file = new File(dir, "metrics-" + report.getLong("timestamp") + ".json");
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            w.write(report.toString(2));
+        }
+        return file;
+    }
+
+    private static List<Histogram> sortedHistograms() {
+        List<Histogram> list = new ArrayList<>(HISTOGRAMS.values());
+        Collections.sort(list, (a, b) -> a.name.compareTo(b.name));
+        return list;
+    }
+
+    private static List<SlowQuery> slowQueries() {
+        synchronized (SLOW_QUERIES) {
+            return new ArrayList<>(SLOW_QUERIES);
+        }
+    }
+
+    /**
+     * Лог-линейная гистограмма: значения до 16 — точно, дальше 8 корзин на каждую степень двойки
+     * (погрешность перцентиля не больше 12.5%). Счётчики атомарные, блокировок нет.
+     */
+    public static final class Histogram {
+        private static final int LINEAR = 16;
+        private static final int SUB_BITS = 3;
+        private static final int SUB = 1 << SUB_BITS;
+        private static final int BUCKETS = LINEAR + (63 - 4) * SUB;
+
+        private final String name;
+        private final String unit;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        private Histogram(String name, String unit) {
+            this.name = name;
+            this.unit = unit;
+        }
+
+        public void add(long value) {
+            if (value < 0) value = 0;
+            buckets.incrementAndGet(bucketOf(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            long m;
+            while (value > (m = max.get()) && !max.compareAndSet(m, value)) {
+                // повторяем, пока не обновим максимум
+            }
+        }
+
+        // Задержка от startNanos (Metrics.now()) до текущего момента, в микросекундах
+        public void record(long startNanos) {
+            add((now() - startNanos) / 1000L);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        public double getMean() {
+            long n = count.get();
+            return n > 0 ? (double) sum.get() / n : 0;
+        }
+
+        /**
+         * Верхняя граница корзины, в которую попадает p-й перцентиль.
+         */
+        public long percentile(double p) {
+            long n = count.get();
+            if (n == 0) return 0;
+            long rank = (long) Math.ceil(n * p / 100.0);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) return Math.min(upperBound(i), max.get());
+            }
+            return max.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) buckets.set(i, 0);
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+
+        private static int bucketOf(long value) {
+            if (value < LINEAR) return (int) value;
+            int exp = 63 - Long.numberOfLeadingZeros(value); // >= 4
+            int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB - 1);
+            return LINEAR + (exp - 4) * SUB + sub;
+        }
+
+        private static long upperBound(int bucket) {
+            if (bucket < LINEAR) return bucket;
+            int exp = (bucket - LINEAR) / SUB + 4;
+            int sub = (bucket - LINEAR) % SUB;
+            return ((long) (SUB + sub + 1) << (exp - SUB_BITS)) - 1;
+        }
+    }
+
+    private static final class SlowQuery {
+        final long time;
+        final double ms;
+        final String sql;
+        final String args;
+        final String plan;
+
+        SlowQuery(long time, double ms, String sql, String args, String plan) {
+            this.time = time;
+            this.ms = ms;
+            this.sql = sql;
+            this.args = args;
+            this.plan = plan;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.tasklist;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Будильник напоминания (ReminderScheduler.ACTION_REMIND), а также перезагрузка и обновление
+ * приложения — после них будильник нужно взвести заново. Работа с БД — в фоне, через goAsync.
+ */
+public class ReminderReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        PendingResult result = goAsync();
+        ReminderScheduler.onBroadcast(context, intent.getAction(), result::finish);
+    }
+}
@@ -0,0 +1,292 @@
+package com.example.tasklist;
+
+import android.app.AlarmManager;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Напоминания о сроках задач. Взведён не больше чем один будильник — на ближайший срок
+ * невыполненной задачи (DBHelper.getNextDueAt: один спуск по частичному индексу), а не по будильнику
+ * на задачу: перевзвод стоит одинаково при десятке и при десятках тысяч задач со сроком,
+ * и система не хранит тысячи PendingIntent.
+ * <ul>
+ * <li>после записи (TaskRepository) — перевзвод, если ближайший срок изменился;</li>
+ * <li>при срабатывании (ReminderReceiver) — уведомления о задачах со сроком в (firedUntil, now],
+ * затем будильник на следующий срок;</li>
+ * <li>после перезагрузки и принудительной остановки (будильники сбрасываются) — перевзвод заново.</li>
+ * </ul>
+ * Состояние — в SharedPreferences: до какого момента напоминания показаны и на какой срок взведён
+ * будильник. Будильник неточный (setAndAllowWhileIdle): точные требуют отдельного разрешения,
+ * а для напоминания задержка в пределах окна Doze допустима.
+ * Экземпляр не потокобезопасен: в приложении все вызовы идут через EXECUTOR.
+ */
+public class ReminderScheduler {
+    private static final String TAG = "ReminderScheduler";
+
+    static final String ACTION_REMIND = "com.example.tasklist.action.REMIND";
+    private static final String CHANNEL_ID = "reminders";
+    private static final String PREFS = "reminders";
+    private static final String KEY_FIRED_UNTIL = "fired_until"; // секунды; сроки не позже уже напомнены
+    private static final String KEY_ARMED = "armed_due";         // срок, на который взведён будильник; -1 — нет
+    private static final long ARMED_UNKNOWN = -2;
+    // Больше уведомлений за одно срабатывание не показываем (например, после долгого выключения):
+    // об остальных — одно общее уведомление
+    private static final int MAX_NOTIFICATIONS = 10;
+    private static final String TAG_MORE = TAG + ".more";
+
+    private static final Metrics.Histogram M_RESCHEDULE = Metrics.timer("reminders.reschedule");
+    private static final Metrics.Histogram M_FIRE = Metrics.timer("reminders.fire");
+
+    private static final ExecutorService EXECUTOR =
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "tasks-reminders"));
+    private static final AtomicBoolean RESCHEDULE_PENDING = new AtomicBoolean();
+
+    // Куда ставится будильник: AlarmManager в приложении, заглушка в замерах
+    interface Alarm {
+        void set(long triggerAtMillis);
+
+        void cancel();
+    }
+
+    private interface Op {
+        void run(ReminderScheduler scheduler);
+    }
+
+    // Итог срабатывания: задачи для отдельных уведомлений и сколько наступивших сроков в них не вошло
+    static final class Fired {
+        final List<Task> tasks;
+        final long more;
+
+        Fired(List<Task> tasks, long more) {
+            this.tasks = tasks;
+            this.more = more;
+        }
+    }
+
+    private final DBHelper db;
+    private final Alarm alarm;
+    private final SharedPreferences prefs;
+
+    ReminderScheduler(DBHelper db, Alarm alarm, SharedPreferences prefs) {
+        this.db = db;
+        this.alarm = alarm;
+        this.prefs = prefs;
+    }
+
+    /**
+     * Взводит будильник на ближайший срок после уже показанных напоминаний (или снимает, если сроков нет).
+     * AlarmManager вызывается, только если этот срок изменился. Возвращает срок или -1.
+     */
+    long reschedule() {
+        long start = Metrics.now();
+        try {
+            long next = db.getNextDueAt(firedUntil());
+            if (next != prefs.getLong(KEY_ARMED, ARMED_UNKNOWN)) {
+                if (next > 0) alarm.set(next * 1000L);
+                else alarm.cancel();
+                prefs.edit().putLong(KEY_ARMED, next).apply();
+            }
+            return next;
+        } finally {
+            M_RESCHEDULE.record(start);
+        }
+    }
+
+    /**
+     * Срабатывание будильника: задачи, чей срок наступил к nowSec и о которых ещё не напоминали,
+     * отмечаются показанными, будильник взводится на следующий срок. Первые MAX_NOTIFICATIONS
+     * возвращаются списком, остальные — числом (more); лишняя строка в запросе показывает,
+     * нужен ли подсчёт, так что обычное срабатывание обходится одним запросом.
+     */
+    Fired fire(long nowSec) {
+        long start = Metrics.now();
+        try {
+            long from = firedUntil();
+            List<Task> due = db.getDueTasks(from, nowSec, MAX_NOTIFICATIONS + 1);
+            long more = 0;
+            if (due.size() > MAX_NOTIFICATIONS) {
+                due = due.subList(0, MAX_NOTIFICATIONS);
+                more = Math.max(1, db.countDueTasks(from, nowSec) - MAX_NOTIFICATIONS);
+            }
+            prefs.edit().putLong(KEY_FIRED_UNTIL, nowSec).putLong(KEY_ARMED, ARMED_UNKNOWN).apply();
+            reschedule();
+            return new Fired(due, more);
+        } finally {
+            M_FIRE.record(start);
+        }
+    }
+
+    // Будильник мог пропасть (перезагрузка): следующий reschedule поставит его в любом случае
+    void forgetArmed() {
+        prefs.edit().putLong(KEY_ARMED, ARMED_UNKNOWN).apply();
+    }
+
+    // При первом запуске — «сейчас»: о сроках, прошедших до появления напоминаний, не напоминаем
+    private long firedUntil() {
+        long until = prefs.getLong(KEY_FIRED_UNTIL, -1);
+        if (until < 0) {
+            until = System.currentTimeMillis() / 1000L;
+            prefs.edit().putLong(KEY_FIRED_UNTIL, until).apply();
+        }
+        return until;
+    }
+
+    // ---------- приложение ----------
+
+    /**
+     * Перевзвод после записи — в фоне; серия записей подряд схлопывается в один перевзвод.
+     */
+    public static void requestReschedule(Context context) {
+        if (!RESCHEDULE_PENDING.compareAndSet(false, true)) return;
+        Context app = context.getApplicationContext();
+        EXECUTOR.execute(() -> {
+            RESCHEDULE_PENDING.set(false);
+            withScheduler(app, ReminderScheduler::reschedule);
+        });
+    }
+
+    /**
+     * Старт процесса: после принудительной остановки будильник и его PendingIntent удалены системой,
+     * а в настройках он всё ещё числится взведённым — тогда ставим заново. БД открывается только в этом случае.
+     */
+    static void onProcessStart(Context context) {
+        Context app = context.getApplicationContext();
+        EXECUTOR.execute(() -> {
+            if (prefs(app).getLong(KEY_ARMED, -1) > 0 && alarmIntent(app, PendingIntent.FLAG_NO_CREATE) == null) {
+                withScheduler(app, s -> {
+                    s.forgetArmed();
+                    s.reschedule();
+                });
+            }
+        });
+    }
+
+    // Из ReminderReceiver: done вызывается по окончании (PendingResult.finish)
+    static void onBroadcast(Context context, String action, Runnable done) {
+        Context app = context.getApplicationContext();
+        EXECUTOR.execute(() -> {
+            try {
+                if (ACTION_REMIND.equals(action)) {
+                    withScheduler(app, s -> notifyDue(app, s.fire(System.currentTimeMillis() / 1000L)));
+                } else {
+                    withScheduler(app, s -> {
+                        s.forgetArmed();
+                        s.reschedule();
+                    });
+                }
+            } finally {
+                done.run();
+            }
+        });
+    }
+
+    private static void withScheduler(Context app, Op op) {
+        DBHelper helper = TaskDatabase.acquire(app);
+        try {
+            op.run(new ReminderScheduler(helper, new SystemAlarm(app), prefs(app)));
+        } catch (Exception e) {
+            Log.e(TAG, "reminder scheduling error", e);
+        } finally {
+            TaskDatabase.release();
+        }
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    private static int immutable() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0;
+    }
+
+    // Один PendingIntent на все напоминания: новый set заменяет прежний будильник
+    private static PendingIntent alarmIntent(Context context, int flags) {
+        Intent intent = new Intent(context, ReminderReceiver.class).setAction(ACTION_REMIND);
+        return PendingIntent.getBroadcast(context, 0, intent, flags | immutable());
+    }
+
+    private static final class SystemAlarm implements Alarm {
+        private final Context context;
+        private final AlarmManager alarmManager;
+
+        SystemAlarm(Context context) {
+            this.context = context;
+            this.alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        }
+
+        @Override
+        public void set(long triggerAtMillis) {
+            PendingIntent pi = alarmIntent(context, PendingIntent.FLAG_UPDATE_CURRENT);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAtMillis, pi);
+            } else {
+                alarmManager.set(AlarmManager.RTC_WAKEUP, triggerAtMillis, pi);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            PendingIntent pi = alarmIntent(context, PendingIntent.FLAG_NO_CREATE);
+            if (pi != null) {
+                alarmManager.cancel(pi);
+                pi.cancel();
+            }
+        }
+    }
+
+    // Уведомление на задачу; нажатие открывает её форму. Не вошедшие в лимит — одним уведомлением,
+    // нажатие открывает список
+    private static void notifyDue(Context context, Fired fired) {
+        List<Task> due = fired.tasks;
+        if (due.isEmpty()) return;
+        NotificationManager nm = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            nm.createNotificationChannel(new NotificationChannel(CHANNEL_ID, "Напоминания о сроках",
+                    NotificationManager.IMPORTANCE_DEFAULT));
+        }
+        SimpleDateFormat format = new SimpleDateFormat("dd.MM.yyyy HH:mm", Locale.getDefault());
+        for (Task t : due) {
+            Intent open = new Intent(context, AddTaskActivity.class)
+                    .putExtra(AddTaskActivity.EXTRA_TASK_ID, t.getId())
+                    .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            PendingIntent content = PendingIntent.getActivity(context, (int) t.getId(), open,
+                    PendingIntent.FLAG_UPDATE_CURRENT | immutable());
+            Notification.Builder b = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                    ? new Notification.Builder(context, CHANNEL_ID) : new Notification.Builder(context);
+            b.setSmallIcon(android.R.drawable.ic_popup_reminder)
+                    .setContentTitle(t.getTitle())
+                    .setContentText("Срок: " + format.format(new Date(t.getDueAt() * 1000L)))
+                    .setContentIntent(content)
+                    .setAutoCancel(true);
+            nm.notify(TAG, (int) t.getId(), b.build());
+        }
+        if (fired.more > 0) {
+            Intent open = new Intent(context, MainActivity.class).addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            PendingIntent content = PendingIntent.getActivity(context, 0, open,
+                    PendingIntent.FLAG_UPDATE_CURRENT | immutable());
+            Notification.Builder b = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                    ? new Notification.Builder(context, CHANNEL_ID) : new Notification.Builder(context);
+            b.setSmallIcon(android.R.drawable.ic_popup_reminder)
+                    .setContentTitle("Ещё задач со сроком: " + fired.more)
+                    .setContentText("Откройте список, чтобы увидеть все")
+                    .setContentIntent(content)
+                    .setAutoCancel(true);
+            nm.notify(TAG_MORE, 0, b.build());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.tasklist;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Начало списка, сохранённое при уходе с экрана (onPause), — чтобы при холодном старте
+ * первый кадр рисовался без открытия БД. Хранится только первый экран (ROWS задач)
+ * и только для списка без поиска; описания длиннее DBHelper.SNIPPET_CHARS хранятся обрезанными,
+ * как их читает список, а заголовки обрезаются до MAX_TITLE_CHARS. Настоящий список из БД
+ * приходит следом и заменяет сохранённый через diff.
+ */
+public final class StartupSnapshot {
+    private static final String TAG = "StartupSnapshot";
+    private static final String FILE_NAME = "startup_snapshot.bin";
+    private static final int FORMAT_VERSION = 2;
+    public static final int ROWS = 30;
+    private static final int MAX_TITLE_CHARS = 1_000;
+
+    private static final ExecutorService WRITER =
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "tasks-startup-snapshot"));
+
+    private StartupSnapshot() {
+    }
+
+    /**
+     * Сохраняет первые ROWS строк snapshot в фоне. Строки копируются сразу: снимок адаптера
+     * может меняться в главном потоке (setDone) во время записи.
+     */
+    public static void save(Context context, TaskSnapshot snapshot, boolean completedFirst, boolean dateDesc) {
+        final int n = Math.min(ROWS, snapshot.size());
+        final TaskSnapshot.Builder rows = new TaskSnapshot.Builder(n);
+        for (int i = 0; i < n; i++) {
+            String title = snapshot.getTitle(i);
+            if (title != null && title.length() > MAX_TITLE_CHARS) title = title.substring(0, MAX_TITLE_CHARS);
+            // описание, подставленное в список целиком (после редактирования), обрезаем как в DBHelper
+            String desc = snapshot.getDescription(i);
+            boolean truncated = snapshot.isDescriptionTruncated(i);
+            if (desc != null && desc.length() > DBHelper.SNIPPET_CHARS) {
+                desc = desc.substring(0, DBHelper.SNIPPET_CHARS);
+                truncated = true;
+            }
+            rows.add(snapshot.getId(i), title, desc, truncated, snapshot.isDone(i), snapshot.getCreatedAt(i));
+        }
+        final AtomicFile file = file(context);
+        WRITER.execute(() -> write(file, rows.build(), completedFirst, dateDesc));
+    }
+
+    /**
+     * Сохранённое начало списка для этой сортировки или null (нет файла, другая сортировка, ошибка чтения).
+     * Файл маленький, поэтому читается синхронно — в onCreate, до первого кадра.
+     */
+    public static TaskSnapshot load(Context context, boolean completedFirst, boolean dateDesc) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(file(context).openRead()))) {
+            if (in.readInt() != FORMAT_VERSION) return null;
+            if (in.readBoolean() != completedFirst || in.readBoolean() != dateDesc) return null;
+            int n = in.readInt();
+            if (n < 0 || n > ROWS) return null;
+            TaskSnapshot.Builder b = new TaskSnapshot.Builder(n);
+            for (int i = 0; i < n; i++) {
+                long id = in.readLong();
+                long createdAt = in.readLong();
+                boolean done = in.readBoolean();
+                String title = in.readUTF();
+                String description = in.readBoolean() ? in.readUTF() : null;
+                boolean truncated = in.readBoolean();
+                b.add(id, title, description, truncated, done, createdAt);
+            }
+            return b.build();
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "load failed", e);
+            return null;
+        }
+    }
+
+    private static void write(AtomicFile file, TaskSnapshot s, boolean completedFirst, boolean dateDesc) {
+        FileOutputStream fos = null;
+        try {
+            fos = file.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(FORMAT_VERSION);
+            out.writeBoolean(completedFirst);
+            out.writeBoolean(dateDesc);
+            out.writeInt(s.size());
+            for (int i = 0; i < s.size(); i++) {
+                out.writeLong(s.getId(i));
+                out.writeLong(s.getCreatedAt(i));
+                out.writeBoolean(s.isDone(i));
+                String title = s.getTitle(i);
+                out.writeUTF(title != null ? title : "");
+                String description = s.getDescription(i);
+                out.writeBoolean(description != null);
+                if (description != null) out.writeUTF(description);
+                out.writeBoolean(s.isDescriptionTruncated(i));
+            }
+            out.flush();
+            file.finishWrite(fos);
+        } catch (IOException e) {
+            Log.w(TAG, "save failed", e);
+            if (fos != null) file.failWrite(fos);
+        }
+    }
+
+    private static AtomicFile file(Context context) {
+        return new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+    }
+}
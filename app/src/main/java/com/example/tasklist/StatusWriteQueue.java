@@ -0,0 +1,130 @@
+package com.example.tasklist;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Отложенная запись смены статуса (write-behind). Переключение CheckBox сразу применяется
+ * к списку, а в БД уходит пачкой: не чаще раза в FLUSH_DELAY_MS или по flush() (onPause),
+ * одной транзакцией на все накопленные задачи. Повторные переключения одной задачи
+ * схлопываются, а вернувшие исходный статус не записываются вовсе.
+ * Если транзакция не удалась, Listener получает исходные статусы для отката.
+ * Все методы — из главного потока.
+ */
+public class StatusWriteQueue {
+    public static final long FLUSH_DELAY_MS = 500;
+
+    public interface Listener {
+        void onFlushFailed(long[] ids, boolean[] previous);
+
+        // пачка записана (или откатана после ошибки) — счётчики в БД могли измениться
+        void onFlushed();
+    }
+
+    private final TaskRepository repository;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flushRunnable = this::flush;
+
+    private final Map<Long, Boolean> pending = new LinkedHashMap<>();  // id -> новый статус
+    private final Map<Long, Boolean> original = new HashMap<>();       // id -> статус в БД до переключений
+    private final Map<Long, Boolean> inFlight = new HashMap<>();       // отправлено, но ещё не записано
+    private boolean scheduled = false;
+
+    public StatusWriteQueue(TaskRepository repository, Listener listener) {
+        this.repository = repository;
+        this.listener = listener;
+    }
+
+    /**
+     * Ставит в очередь новый статус задачи; previous — статус, который был показан до переключения.
+     */
+    public void enqueue(long id, boolean done, boolean previous) {
+        if (!original.containsKey(id)) original.put(id, previous);
+        if (original.get(id) == done) {
+            // переключили обратно — записывать нечего
+            pending.remove(id);
+            original.remove(id);
+            return;
+        }
+        pending.put(id, done);
+        if (!scheduled) {
+            scheduled = true;
+            handler.postDelayed(flushRunnable, FLUSH_DELAY_MS);
+        }
+    }
+
+    public boolean isEmpty() {
+        return pending.isEmpty() && inFlight.isEmpty();
+    }
+
+    /**
+     * Снимок, прочитанный из БД, с наложенными ещё не записанными статусами (сам snapshot не меняется).
+     */
+    public TaskSnapshot overlay(TaskSnapshot snapshot) {
+        if (isEmpty()) return snapshot;
+        int[] rows = new int[pending.size() + inFlight.size()];
+        boolean[] values = new boolean[rows.length];
+        int count = 0;
+        for (int i = 0; i < snapshot.size() && count < rows.length; i++) {
+            Boolean done = pending.get(snapshot.getId(i));
+            if (done == null) done = inFlight.get(snapshot.getId(i));
+            if (done != null) {
+                rows[count] = i;
+                values[count++] = done;
+            }
+        }
+        return snapshot.withDone(rows, values, count);
+    }
+
+    public void flush() {
+        handler.removeCallbacks(flushRunnable);
+        scheduled = false;
+        if (pending.isEmpty()) return;
+
+        int n = pending.size();
+        final long[] ids = new long[n];
+        final boolean[] done = new boolean[n];
+        final boolean[] previous = new boolean[n];
+        int i = 0;
+        for (Map.Entry<Long, Boolean> e : pending.entrySet()) {
+            ids[i] = e.getKey();
+            done[i] = e.getValue();
+            previous[i] = original.get(e.getKey());
+            i++;
+        }
+        inFlight.putAll(pending);
+        pending.clear();
+        original.clear();
+
+        repository.updateTaskStatuses(ids, done, ok -> {
+            int failed = 0;
+            for (int k = 0; k < ids.length; k++) {
+                long id = ids[k];
+                if (Boolean.valueOf(done[k]).equals(inFlight.get(id))) inFlight.remove(id);
+                if (ok) continue;
+                if (pending.containsKey(id)) {
+                    // задачу снова переключили, пока шла запись: её запись ещё впереди,
+                    // но считать её нужно от статуса, который действительно в БД
+                    if (pending.get(id) == previous[k]) {
+                        pending.remove(id);
+                        original.remove(id);
+                    } else {
+                        original.put(id, previous[k]);
+                    }
+                    continue;
+                }
+                ids[failed] = id;
+                previous[failed] = previous[k];
+                failed++;
+            }
+            if (failed > 0) listener.onFlushFailed(Arrays.copyOf(ids, failed), Arrays.copyOf(previous, failed));
+            listener.onFlushed();
+        });
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.tasklist;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Изменение задачи в протоколе синхронизации: состояние изменённых полей (fields — маска)
+ * и время изменения каждого поля для разрешения конфликтов по полям (побеждает более позднее).
+ * deleted — надгробие: задача удалена, поля не передаются.
+ * В JSON ключи короткие: пакет из тысяч изменений идёт одним запросом.
+ */
+public final class SyncChange {
+    public static final int OP_UPSERT = 1;
+    public static final int OP_DELETE = 2;
+
+    public static final int FIELD_TITLE = 1;
+    public static final int FIELD_DESC = 2;
+    public static final int FIELD_DONE = 4;
+    public static final int FIELD_DUE = 8;
+    public static final int FIELD_ALL = FIELD_TITLE | FIELD_DESC | FIELD_DONE | FIELD_DUE;
+
+    final String uid;
+    final boolean deleted;
+    final int fields;
+    final String title;
+    final String description;
+    final boolean done;
+    final long due;        // срок, секунды, как в tasks.due_at; 0 — без срока
+    final long createdAt;  // секунды, как в tasks.created_at
+    final long titleAt;    // мс; 0 — поле не менялось
+    final long descAt;
+    final long doneAt;
+    final long dueAt;
+
+    SyncChange(String uid, boolean deleted, int fields, String title, String description, boolean done,
+               long due, long createdAt, long titleAt, long descAt, long doneAt, long dueAt) {
+        this.uid = uid;
+        this.deleted = deleted;
+        this.fields = deleted ? 0 : fields;
+        this.title = title;
+        this.description = description;
+        this.done = done;
+        this.due = due;
+        this.createdAt = createdAt;
+        this.titleAt = titleAt;
+        this.descAt = descAt;
+        this.doneAt = doneAt;
+        this.dueAt = dueAt;
+    }
+
+    static SyncChange tombstone(String uid) {
+        return new SyncChange(uid, true, 0, null, null, false, 0, 0, 0, 0, 0, 0);
+    }
+
+    boolean has(int field) {
+        return (fields & field) != 0;
+    }
+
+    // Самое позднее изменение среди переданных полей
+    long changedAt() {
+        return Math.max(Math.max(has(FIELD_TITLE) ? titleAt : 0, has(FIELD_DESC) ? descAt : 0),
+                Math.max(has(FIELD_DONE) ? doneAt : 0, has(FIELD_DUE) ? dueAt : 0));
+    }
+
+    JSONObject toJson() throws JSONException {
+        JSONObject o = new JSONObject();
+        o.put("u", uid);
+        if (deleted) return o.put("d", 1);
+        o.put("c", createdAt);
+        if (has(FIELD_TITLE)) o.put("t", title).put("ta", titleAt);
+        if (has(FIELD_DESC)) o.put("s", description != null ? description : JSONObject.NULL).put("sa", descAt);
+        if (has(FIELD_DONE)) o.put("x", done ? 1 : 0).put("xa", doneAt);
+        if (has(FIELD_DUE)) o.put("r", due > 0 ? due : JSONObject.NULL).put("ra", dueAt);
+        return o;
+    }
+
+    static SyncChange fromJson(JSONObject o) throws JSONException {
+        String uid = o.getString("u");
+        if (o.optInt("d", 0) == 1) return tombstone(uid);
+        int fields = 0;
+        if (o.has("t")) fields |= FIELD_TITLE;
+        if (o.has("s")) fields |= FIELD_DESC;
+        if (o.has("x")) fields |= FIELD_DONE;
+        if (o.has("r")) fields |= FIELD_DUE;
+        return new SyncChange(uid, false, fields,
+                o.optString("t", null), o.isNull("s") ? null : o.optString("s", null), o.optInt("x", 0) == 1,
+                o.isNull("r") ? 0 : o.optLong("r", 0), o.optLong("c", 0),
+                o.optLong("ta", 0), o.optLong("sa", 0), o.optLong("xa", 0), o.optLong("ra", 0));
+    }
+}
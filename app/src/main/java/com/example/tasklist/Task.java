@@ -6,6 +6,8 @@ public class Task {
     private String description;
     private boolean done;
     private long createdAt;
+    private long dueAt; // срок в секундах; 0 — без срока
+    private boolean descriptionTruncated; // в description только начало текста (список, см. DBHelper.SNIPPET_CHARS)
 
     public Task() {}
 
@@ -27,6 +29,13 @@ public class Task {
         this(-1, title, description, done, 0);
     }
 
+    // копия (используется кэшем, чтобы изменения в списке не затрагивали закэшированный объект)
+    public Task(Task other) {
+        this(other.id, other.title, other.description, other.done, other.createdAt);
+        this.descriptionTruncated = other.descriptionTruncated;
+        this.dueAt = other.dueAt;
+    }
+
     public long getId() { return id; }
     public void setId(long id) { this.id = id; }
 
@@ -34,11 +43,20 @@ public class Task {
     public void setTitle(String title) { this.title = title; }
 
     public String getDescription() { return description; }
-    public void setDescription(String description) { this.description = description; }
+    public void setDescription(String description) {
+        this.description = description;
+        this.descriptionTruncated = false;
+    }
+
+    public boolean isDescriptionTruncated() { return descriptionTruncated; }
+    public void setDescriptionTruncated(boolean truncated) { this.descriptionTruncated = truncated; }
 
     public boolean isDone() { return done; }
     public void setDone(boolean done) { this.done = done; }
 
     public long getCreatedAt() { return createdAt; }
     public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
+
+    public long getDueAt() { return dueAt; }
+    public void setDueAt(long dueAt) { this.dueAt = dueAt; }
 }
@@ -1,100 +1,273 @@
 package com.example.tasklist;
 
 import android.content.Context;
+import android.graphics.Color;
 import android.graphics.Paint;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.CheckBox;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
 
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * Адаптер задач с отображением даты создания
+ * Адаптер задач с отображением даты создания.
+ * Строки привязываются напрямую из столбцового снимка (TaskSnapshot), без объекта Task на строку.
+ * Новый снимок сравнивается со старым в фоновом потоке (по id задачи),
+ * и RecyclerView получает только реально изменившиеся позиции.
+ * Смена статуса показывается сразу, а в БД записывается пачкой (см. StatusWriteQueue).
  */
-public class TaskAdapter extends ArrayAdapter<Task> {
-    private DBHelper dbHelper;
-    private List<Task> tasks;
-
-    public TaskAdapter(Context context, List<Task> tasks, DBHelper dbHelper) {
-        super(context, 0, tasks != null ? tasks : new ArrayList<>());
-        this.dbHelper = dbHelper;
-        this.tasks = tasks != null ? tasks : new ArrayList<>();
+public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.ViewHolder>
+        implements StatusWriteQueue.Listener {
+
+    public interface Listener {
+        void onTaskClick(Task task);
+
+        void onTaskLongClick(Task task);
+
+        // в режиме выбора изменился набор выбранных задач
+        void onSelectionChanged(int selectedCount);
+
+        // отложенная смена статуса записана в БД
+        void onStatusSaved();
+    }
+
+    private static final ExecutorService DIFF_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "tasks-diff");
+        t.setPriority(Thread.NORM_PRIORITY - 1);
+        return t;
+    });
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+    private static final Metrics.Histogram M_BIND = Metrics.timer("ui.bindRow");
+
+    private final Context context;
+    private final Listener listener;
+    private final StatusWriteQueue statusQueue;
+
+    // Всё, что нужно при привязке строки, создаётся один раз: при прокрутке bind ничего не выделяет
+    private final int colorText;
+    private final int colorTextDone;
+    private final int colorDate;
+    private final int colorSelected;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm", Locale.getDefault());
+    private final Date date = new Date();
+
+    // Режим множественного выбора: выбранные задачи хранятся по id, чтобы переживать перезагрузку списка
+    private final Set<Long> selectedIds = new HashSet<>();
+    private boolean selectionMode = false;
+
+    private TaskSnapshot current = TaskSnapshot.EMPTY; // показанный снимок
+    private TaskSnapshot latest = TaskSnapshot.EMPTY;  // последний переданный (может ещё сравниваться в фоне)
+    private int submitGeneration = 0;
+
+    public TaskAdapter(Context context, TaskRepository repository, Listener listener) {
+        this.context = context;
+        this.listener = listener;
+        this.statusQueue = new StatusWriteQueue(repository, this);
+        this.colorText = ContextCompat.getColor(context, R.color.task_text);
+        this.colorTextDone = ContextCompat.getColor(context, R.color.task_text_done);
+        this.colorDate = ContextCompat.getColor(context, R.color.task_date_color);
+        this.colorSelected = ContextCompat.getColor(context, R.color.task_selected);
         setHasStableIds(true);
     }
 
-    private void setHasStableIds(boolean b) {
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final CheckBox cbDone;
+        final TextView tvTitle;
+        final TextView tvDesc;
+        final TextView tvDate;
+        long taskId = -1; // задача, которая сейчас показана в строке
+        boolean binding; // CheckBox меняется из bind, а не пользователем
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            cbDone = itemView.findViewById(R.id.cbDone);
+            tvTitle = itemView.findViewById(R.id.tvTitle);
+            tvDesc = itemView.findViewById(R.id.tvDesc);
+            tvDate = itemView.findViewById(R.id.tvDate);
+        }
     }
 
-    private static class ViewHolder {
-        CheckBox cbDone;
-        TextView tvTitle;
-        TextView tvDesc;
-        TextView tvDate;
+    @Override
+    public int getItemCount() {
+        return current.size();
     }
 
     @Override
     public long getItemId(int position) {
-        Task t = getItem(position);
-        return (t != null) ? t.getId() : position;
+        return current.getId(position);
     }
 
-    @Override
-    public boolean hasStableIds() {
-        return true;
+    /**
+     * Показывает новый снимок. Изменения относительно показанного вычисляются в фоне;
+     * если за это время передан ещё один снимок, результат устаревшего сравнения отбрасывается.
+     */
+    public void submit(TaskSnapshot snapshot) {
+        final int generation = ++submitGeneration;
+        // статусы, ещё не записанные в БД, важнее прочитанных из неё
+        final TaskSnapshot next = statusQueue.overlay(snapshot != null ? snapshot : TaskSnapshot.EMPTY);
+        latest = next;
+        final TaskSnapshot old = current;
+        if (old == next) return;
+        if (old.isEmpty() || next.isEmpty()) {
+            current = next;
+            notifyDataSetChanged();
+            return;
+        }
+        DIFF_EXECUTOR.execute(() -> {
+            DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new SnapshotDiff(old, next));
+            MAIN.post(() -> {
+                if (generation != submitGeneration) return;
+                // latest — это next или его копия со сменённым за время сравнения статусом (setDone)
+                current = latest;
+                diff.dispatchUpdatesTo(TaskAdapter.this);
+            });
+        });
     }
 
+    // последний переданный в адаптер снимок (может ещё сравниваться в фоне)
+    public TaskSnapshot getSnapshot() {
+        return latest;
+    }
 
-    private SimpleDateFormat getDateFormatter() {
-        return new SimpleDateFormat("dd.MM.yyyy HH:mm", Locale.getDefault());
+    /**
+     * Добавляет задачи в конец текущего списка (следующая страница).
+     */
+    public void append(TaskSnapshot page) {
+        submit(latest.append(page));
     }
 
-    @Override
-    public View getView(int position, View convertView, ViewGroup parent) {
-        Task task = getItem(position);
-        ViewHolder holder;
-
-        if (convertView == null) {
-            convertView = LayoutInflater.from(getContext()).inflate(R.layout.task_item, parent, false);
-            holder = new ViewHolder();
-            holder.cbDone = convertView.findViewById(R.id.cbDone);
-            holder.tvTitle = convertView.findViewById(R.id.tvTitle);
-            holder.tvDesc = convertView.findViewById(R.id.tvDesc);
-            holder.tvDate = convertView.findViewById(R.id.tvDate);
-            convertView.setTag(holder);
-        } else {
-            holder = (ViewHolder) convertView.getTag();
+    public void remove(long taskId) {
+        TaskSnapshot next = latest.without(taskId);
+        if (next != latest) submit(next);
+    }
+
+    public boolean isSelectionMode() {
+        return selectionMode;
+    }
+
+    public void setSelectionMode(boolean enabled) {
+        if (selectionMode == enabled) return;
+        selectionMode = enabled;
+        selectedIds.clear();
+        notifyItemRangeChanged(0, getItemCount());
+        listener.onSelectionChanged(0);
+    }
+
+    public long[] getSelectedIds() {
+        long[] ids = new long[selectedIds.size()];
+        int i = 0;
+        for (Long id : selectedIds) ids[i++] = id;
+        return ids;
+    }
+
+    private void toggleSelection(ViewHolder holder) {
+        long id = holder.taskId;
+        if (!selectedIds.remove(id)) selectedIds.add(id);
+        holder.itemView.setBackgroundColor(selectedIds.contains(id) ? colorSelected : Color.TRANSPARENT);
+        listener.onSelectionChanged(selectedIds.size());
+    }
+
+    // строка снимка, показанная в holder, или -1, если строка уже не привязана
+    private int rowOf(ViewHolder holder) {
+        int row = holder.getAdapterPosition();
+        if (row == RecyclerView.NO_POSITION || row >= current.size() || current.getId(row) != holder.taskId) {
+            return -1;
         }
+        return row;
+    }
 
+    // Строка даты форматируется один раз на строку снимка и сохраняется в нём
+    private String formatCreatedAt(int row) {
+        String text = current.getCreatedAtText(row);
+        if (text == null) {
+            date.setTime(current.getCreatedAt(row) * 1000L);
+            text = dateFormat.format(date);
+            current.setCreatedAtText(row, text);
+        }
+        return text;
+    }
 
-        if (task == null) {
-            holder.tvTitle.setText("");
-            holder.tvDesc.setText("");
-            holder.tvDate.setText("");
-            holder.cbDone.setOnCheckedChangeListener(null);
-            holder.cbDone.setChecked(false);
-            return convertView;
+    // У обрезанного описания «…» дописывается тоже один раз на строку снимка, а не при каждой привязке
+    private String formatDescription(int row) {
+        String desc = current.getDescription(row);
+        if (desc == null) return "";
+        if (!current.isDescriptionTruncated(row)) return desc;
+        String text = current.getDescriptionText(row);
+        if (text == null) {
+            text = desc + "…";
+            current.setDescriptionText(row, text);
         }
+        return text;
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(context).inflate(R.layout.task_item, parent, false);
+        ViewHolder holder = new ViewHolder(view);
+        view.setOnClickListener(v -> {
+            int row = rowOf(holder);
+            if (row < 0) return;
+            if (selectionMode) toggleSelection(holder);
+            else listener.onTaskClick(current.toTask(row));
+        });
+        view.setOnLongClickListener(v -> {
+            int row = rowOf(holder);
+            if (row < 0) return true;
+            if (selectionMode) toggleSelection(holder);
+            else listener.onTaskLongClick(current.toTask(row));
+            return true; // событие обработано
+        });
+        holder.cbDone.setFocusable(false);
+        holder.cbDone.setClickable(true);
+        holder.tvDate.setTextColor(colorDate);
+        // Один обработчик на строку: задачу берёт из holder, а не из замыкания на каждую привязку
+        holder.cbDone.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            if (holder.binding || rowOf(holder) < 0) return;
+            onStatusToggled(holder, holder.taskId, isChecked);
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        long start = Metrics.now();
+        bind(holder, position);
+        M_BIND.record(start);
+    }
+
+    private void bind(ViewHolder holder, int row) {
+        TaskSnapshot s = current;
+        long id = s.getId(row);
+        holder.taskId = id;
+        holder.itemView.setBackgroundColor(selectionMode && selectedIds.contains(id)
+                ? colorSelected : Color.TRANSPARENT);
 
         // Текстовые поля
-        holder.tvTitle.setText(task.getTitle() != null ? task.getTitle() : "");
-        holder.tvDesc.setText(task.getDescription() != null ? task.getDescription() : "");
+        String title = s.getTitle(row);
+        holder.tvTitle.setText(title != null ? title : "");
+        holder.tvDesc.setText(formatDescription(row));
 
         // Дата создания (если есть) — форматируем, иначе пустая строка
-        long createdSec = task.getCreatedAt();
-        if (createdSec > 0) {
-            Date d = new Date(createdSec * 1000L);
-            String dateStr = getDateFormatter().format(d);
-            holder.tvDate.setText(dateStr);
+        if (s.getCreatedAt(row) > 0) {
+            holder.tvDate.setText(formatCreatedAt(row));
             holder.tvDate.setVisibility(View.VISIBLE);
         } else {
             holder.tvDate.setText("");
@@ -102,51 +275,95 @@ public class TaskAdapter extends ArrayAdapter<Task> {
         }
 
         // Внешний вид в зависимости от статуса
-        if (task.isDone()) {
-            holder.tvTitle.setTextColor(ContextCompat.getColor(getContext(), R.color.task_text_done));
-            holder.tvDesc.setTextColor(ContextCompat.getColor(getContext(), R.color.task_text_done));
-            holder.tvDate.setTextColor(ContextCompat.getColor(getContext(), R.color.task_date_color));
-            holder.tvTitle.setPaintFlags(holder.tvTitle.getPaintFlags() | Paint.STRIKE_THRU_TEXT_FLAG);
-        } else {
-            holder.tvTitle.setTextColor(ContextCompat.getColor(getContext(), R.color.task_text));
-            holder.tvDesc.setTextColor(ContextCompat.getColor(getContext(), R.color.task_text));
-            holder.tvDate.setTextColor(ContextCompat.getColor(getContext(), R.color.task_date_color));
-            holder.tvTitle.setPaintFlags(holder.tvTitle.getPaintFlags() & (~Paint.STRIKE_THRU_TEXT_FLAG));
+        boolean done = s.isDone(row);
+        applyDoneStyle(holder, done);
+
+        holder.binding = true;
+        holder.cbDone.setChecked(done);
+        holder.binding = false;
+    }
+
+    // Обработчик изменения статуса: строка меняется сразу, запись в БД — отложенная
+    private void onStatusToggled(ViewHolder holder, long taskId, boolean isChecked) {
+        setDone(taskId, isChecked);
+        if (rowOf(holder) >= 0) applyDoneStyle(holder, isChecked);
+        statusQueue.enqueue(taskId, isChecked, !isChecked);
+    }
+
+    /**
+     * Записывает накопленные смены статуса, не дожидаясь таймера (onPause, перед пакетными операциями).
+     */
+    public void flushPendingStatus() {
+        statusQueue.flush();
+    }
+
+    // Запись не удалась — возвращаем строкам статус, который остался в БД
+    @Override
+    public void onFlushFailed(long[] ids, boolean[] previous) {
+        for (int i = 0; i < ids.length; i++) {
+            setDone(ids[i], previous[i]);
+            int row = current.indexOf(ids[i]);
+            if (row >= 0) notifyItemChanged(row);
         }
+        Toast.makeText(context, "Ошибка при обновлении статуса задачи", Toast.LENGTH_SHORT).show();
+    }
 
-        // Настройка CheckBox — отключаем старый слушатель
-        holder.cbDone.setOnCheckedChangeListener(null);
-        holder.cbDone.setChecked(task.isDone());
-        holder.cbDone.setFocusable(false);
-        holder.cbDone.setClickable(true);
+    @Override
+    public void onFlushed() {
+        listener.onStatusSaved();
+    }
 
-        // Обработчик изменения статуса
-        holder.cbDone.setOnCheckedChangeListener((buttonView, isChecked) -> {
-            try {
-                boolean ok = dbHelper.updateTaskStatus(task.getId(), isChecked);
-                if (ok) {
-                    task.setDone(isChecked);
-                    // мгновенно обновляем вид строки
-                    if (isChecked) {
-                        holder.tvTitle.setTextColor(ContextCompat.getColor(getContext(), R.color.task_text_done));
-                        holder.tvDesc.setTextColor(ContextCompat.getColor(getContext(), R.color.task_text_done));
-                        holder.tvTitle.setPaintFlags(holder.tvTitle.getPaintFlags() | Paint.STRIKE_THRU_TEXT_FLAG);
-                    } else {
-                        holder.tvTitle.setTextColor(ContextCompat.getColor(getContext(), R.color.task_text));
-                        holder.tvDesc.setTextColor(ContextCompat.getColor(getContext(), R.color.task_text));
-                        holder.tvTitle.setPaintFlags(holder.tvTitle.getPaintFlags() & (~Paint.STRIKE_THRU_TEXT_FLAG));
-                    }
-                } else {
-                    // откат UI при ошибке
-                    buttonView.setChecked(!isChecked);
-                    Toast.makeText(getContext(), "Ошибка при обновлении статуса задачи", Toast.LENGTH_SHORT).show();
-                }
-            } catch (Exception e) {
-                Toast.makeText(getContext(), "Исключение при обновлении статуса", Toast.LENGTH_SHORT).show();
-                buttonView.setChecked(!isChecked);
-            }
-        });
+    // Статус меняется заменой снимков на копии (TaskSnapshot.withDone): прежние могут сравниваться в фоне
+    private void setDone(long taskId, boolean done) {
+        boolean same = latest == current;
+        current = withDone(current, taskId, done);
+        latest = same ? current : withDone(latest, taskId, done);
+    }
+
+    private static TaskSnapshot withDone(TaskSnapshot snapshot, long taskId, boolean done) {
+        int row = snapshot.indexOf(taskId);
+        return row >= 0 ? snapshot.withDone(row, done) : snapshot;
+    }
+
+    private void applyDoneStyle(ViewHolder holder, boolean done) {
+        int color = done ? colorTextDone : colorText;
+        holder.tvTitle.setTextColor(color);
+        holder.tvDesc.setTextColor(color);
+        int flags = holder.tvTitle.getPaintFlags();
+        holder.tvTitle.setPaintFlags(done ? flags | Paint.STRIKE_THRU_TEXT_FLAG : flags & ~Paint.STRIKE_THRU_TEXT_FLAG);
+    }
+
+    private static class SnapshotDiff extends DiffUtil.Callback {
+        private final TaskSnapshot oldList;
+        private final TaskSnapshot newList;
 
-        return convertView;
+        SnapshotDiff(TaskSnapshot oldList, TaskSnapshot newList) {
+            this.oldList = oldList;
+            this.newList = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPos, int newPos) {
+            return oldList.getId(oldPos) == newList.getId(newPos);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPos, int newPos) {
+            return oldList.isDone(oldPos) == newList.isDone(newPos)
+                    && oldList.getCreatedAt(oldPos) == newList.getCreatedAt(newPos)
+                    && TextUtils.equals(oldList.getTitle(oldPos), newList.getTitle(newPos))
+                    && TextUtils.equals(oldList.getDescription(oldPos), newList.getDescription(newPos))
+                    && oldList.isDescriptionTruncated(oldPos) == newList.isDescriptionTruncated(newPos);
+        }
     }
 }
@@ -0,0 +1,23 @@
+package com.example.tasklist;
+
+import android.app.Application;
+
+/**
+ * Процесс приложения: владеет общим соединением с БД (TaskDatabase).
+ * В onCreate ничего тяжёлого — БД открывается при первом запросе экрана.
+ */
+public class TaskApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // проверка будильника напоминаний — в фоне, БД открывается, только если он пропал
+        ReminderScheduler.onProcessStart(this);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        TaskDatabase.onTrimMemory(level);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.tasklist;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Кэш задач по id в памяти процесса (LRU). Заполняется при чтении списка,
+ * поддерживается в актуальном состоянии методами записи DBHelper (write-through).
+ * Хранит копии: объекты Task из адаптера изменяются на месте и не должны попадать в кэш.
+ */
+public class TaskCache {
+    public static final int DEFAULT_MAX_SIZE = 500;
+
+    private final LinkedHashMap<Long, Task> map = new LinkedHashMap<>(64, 0.75f, true);
+    private int maxSize;
+    private long hits = 0;
+    private long misses = 0;
+
+    public TaskCache(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    /**
+     * Возвращает копию задачи или null, если её нет в кэше.
+     */
+    public synchronized Task get(long id) {
+        Task t = map.get(id);
+        if (t == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return new Task(t);
+    }
+
+    public synchronized void put(Task task) {
+        if (task == null || task.getId() <= 0) return;
+        map.put(task.getId(), new Task(task));
+        trim();
+    }
+
+    public synchronized void updateStatus(long id, boolean done) {
+        Task t = map.get(id);
+        if (t != null) t.setDone(done);
+    }
+
+    /**
+     * Обновление задачи: created_at при обновлении не меняется, поэтому берём его из кэша.
+     */
+    public synchronized void update(Task task) {
+        Task t = map.get(task.getId());
+        if (t == null) return;
+        t.setTitle(task.getTitle());
+        t.setDescription(task.getDescription());
+        t.setDone(task.isDone());
+        t.setDueAt(task.getDueAt());
+    }
+
+    public synchronized void remove(long id) {
+        map.remove(id);
+    }
+
+    public synchronized void removeDone() {
+        Iterator<Task> it = map.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().isDone()) it.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    public synchronized void setMaxSize(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+        trim();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long total = hits + misses;
+        return "TaskCache{size=" + map.size() + "/" + maxSize + ", hits=" + hits + ", misses=" + misses
+                + ", hitRate=" + (total > 0 ? (100 * hits / total) + "%" : "-") + "}";
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<Long, Task>> it = map.entrySet().iterator();
+        while (map.size() > maxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+}
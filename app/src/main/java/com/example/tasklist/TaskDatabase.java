@@ -0,0 +1,79 @@
+package com.example.tasklist;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Общий на процесс DBHelper для экранов приложения вместо отдельного на каждую Activity.
+ * Создаётся лениво при первом acquire на контексте приложения; само соединение SQLite
+ * открывается при первом запросе. Экраны берут ссылку в onCreate (acquire) и отдают в onDestroy
+ * (release, через TaskRepository.close). Когда ссылок не осталось, соединение закрывается
+ * не сразу, а через IDLE_CLOSE_MS: переход список ↔ форма и поворот экрана не переоткрывают БД
+ * и не теряют подготовленные запросы. При нехватке памяти простаивающее соединение закрывается
+ * сразу (TaskApplication.onTrimMemory). Фоновая работа над общим DBHelper (операции TaskRepository,
+ * миграции данных, напоминания) держит свою ссылку, пока выполняется: иначе закрытие по простою
+ * застало бы её посреди транзакции. Потокобезопасен.
+ */
+public final class TaskDatabase {
+    public static final long IDLE_CLOSE_MS = 10_000;
+
+    private static final Object LOCK = new Object();
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+    private static final Runnable CLOSE_IF_IDLE = TaskDatabase::closeIfIdle;
+
+    private static DBHelper helper; // под LOCK
+    private static int refs = 0;    // под LOCK
+
+    private TaskDatabase() {
+    }
+
+    /**
+     * Возвращает общий DBHelper и увеличивает счётчик ссылок; на каждый acquire — ровно один release.
+     */
+    public static DBHelper acquire(Context context) {
+        synchronized (LOCK) {
+            MAIN.removeCallbacks(CLOSE_IF_IDLE);
+            if (helper == null) helper = new DBHelper(context.getApplicationContext());
+            // незавершённые миграции данных (после обновления или прерванные закрытием БД);
+            // у прохода своя ссылка, он отдаёт её по окончании
+            if (refs == 0) {
+                refs++;
+                if (!DataMigrations.resumeInBackground(helper, TaskDatabase::release)) refs--;
+            }
+            refs++;
+            return helper;
+        }
+    }
+
+    /**
+     * Ещё одна ссылка на уже полученный DBHelper — на время фоновой операции; отдаётся release().
+     */
+    static void retain() {
+        synchronized (LOCK) {
+            if (helper == null) throw new IllegalStateException("retain() before acquire()");
+            MAIN.removeCallbacks(CLOSE_IF_IDLE);
+            refs++;
+        }
+    }
+
+    public static void release() {
+        synchronized (LOCK) {
+            if (refs == 0) throw new IllegalStateException("release() without acquire()");
+            if (--refs == 0) MAIN.postDelayed(CLOSE_IF_IDLE, IDLE_CLOSE_MS);
+        }
+    }
+
+    static void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) closeIfIdle();
+    }
+
+    // Объект DBHelper остаётся: запрос, который ещё стоит в очереди исполнителя, просто откроет БД заново
+    private static void closeIfIdle() {
+        synchronized (LOCK) {
+            MAIN.removeCallbacks(CLOSE_IF_IDLE);
+            if (refs == 0 && helper != null) helper.close();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.tasklist;
+
+/**
+ * Постраничная загрузка списка задач для заданных поиска и сортировки.
+ * Следующая страница запрашивается заранее и хранится в буфере, поэтому при прокрутке
+ * до конца списка она добавляется сразу, без ожидания запроса к БД.
+ * Страница, которую не удалось прочитать, не считается последней: loadMore() запросит её снова.
+ */
+public class TaskPager {
+    public static final int PAGE_SIZE = 50;
+
+    public interface Listener {
+        // first == true — первая страница, список нужно заменить целиком
+        void onPage(TaskSnapshot page, boolean first);
+
+        // страницу не удалось прочитать (ошибка БД, переполнена очередь чтения)
+        void onError(boolean first);
+    }
+
+    private final TaskRepository repository;
+    private final String search;
+    private final boolean completedFirst;
+    private final boolean dateDesc;
+    private final int initialSize;
+    private final Listener listener;
+
+    private Task lastFetched;         // последняя задача последней полученной страницы — ключ для следующей
+    private TaskSnapshot prefetched;  // заранее загруженная, ещё не показанная страница
+    private boolean loading = false;
+    private boolean exhausted = false;
+    private boolean appendWhenReady = false; // список уже докручен до конца, а страница ещё грузится
+
+    // initialSize — размер первой страницы (при перезагрузке — сколько строк уже показано)
+    public TaskPager(TaskRepository repository, String search, boolean completedFirst, boolean dateDesc,
+                     int initialSize, Listener listener) {
+        this.repository = repository;
+        this.search = search;
+        this.completedFirst = completedFirst;
+        this.dateDesc = dateDesc;
+        this.initialSize = initialSize;
+        this.listener = listener;
+    }
+
+    public void start() {
+        loading = true;
+        repository.getTasksPage(search, completedFirst, dateDesc, null, initialSize, page -> {
+            loading = false;
+            if (page == null) {
+                listener.onError(true);
+                return;
+            }
+            onFetched(page, initialSize);
+            listener.onPage(page, true);
+            prefetch();
+        });
+    }
+
+    /**
+     * Вызывается, когда прокрутка приблизилась к концу показанного списка.
+     */
+    public void loadMore() {
+        if (prefetched != null) {
+            TaskSnapshot page = prefetched;
+            prefetched = null;
+            listener.onPage(page, false);
+            prefetch();
+        } else if (loading) {
+            appendWhenReady = true;
+        } else if (!exhausted && lastFetched != null) {
+            // предыдущая попытка подгрузки не удалась — повторяем (первую страницу повторяет новый TaskPager)
+            appendWhenReady = true;
+            prefetch();
+        }
+    }
+
+    /**
+     * Убирает задачу из заранее загруженной страницы — она уже вставлена в список вручную.
+     */
+    public void forget(long id) {
+        if (prefetched != null) prefetched = prefetched.without(id);
+    }
+
+    public boolean isComplete() {
+        return exhausted && prefetched == null;
+    }
+
+    private void prefetch() {
+        if (exhausted || loading || prefetched != null) return;
+        loading = true;
+        repository.getTasksPage(search, completedFirst, dateDesc, lastFetched, PAGE_SIZE, page -> {
+            loading = false;
+            if (page == null) {
+                appendWhenReady = false;
+                listener.onError(false);
+                return;
+            }
+            onFetched(page, PAGE_SIZE);
+            if (page.isEmpty()) return;
+            prefetched = page;
+            if (appendWhenReady) {
+                appendWhenReady = false;
+                loadMore();
+            }
+        });
+    }
+
+    private void onFetched(TaskSnapshot page, int requested) {
+        if (page.size() < requested) exhausted = true;
+        if (!page.isEmpty()) lastFetched = page.toTask(page.size() - 1);
+    }
+}
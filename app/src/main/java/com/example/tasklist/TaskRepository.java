@@ -0,0 +1,306 @@
+package com.example.tasklist;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Слой доступа к задачам поверх DBHelper: вся работа с БД выполняется в фоне,
+ * результат возвращается в главный поток через Callback.
+ * Запись — один поток (порядок операций сохраняется), чтение — небольшой пул.
+ */
+public class TaskRepository {
+    private static final String TAG = "TaskRepository";
+
+    private static final int READ_THREADS = 2;
+    private static final int READ_QUEUE_CAPACITY = 32;
+    // Больше, чем у чтения: отклонённая запись — ошибка для пользователя, а не просто повторный запрос.
+    // Переключения статуса схлопываются в StatusWriteQueue, так что очередь копится только за долгой
+    // записью (импорт) при серии действий подряд
+    private static final int WRITE_QUEUE_CAPACITY = 256;
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    // Исполнители общие на процесс: запись в SQLite всё равно сериализуется
+    // Очереди ограничены; переполненная отклоняет задачу (AbortPolicy), и submit отдаёт
+    // вызывающему значение ошибки — экран показывает её и откатывает строку, а не копит работу
+    private static final ExecutorService WRITE_EXECUTOR = new ThreadPoolExecutor(
+            1, 1, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(WRITE_QUEUE_CAPACITY),
+            r -> newThread(r, "tasks-db-write"), new ThreadPoolExecutor.AbortPolicy());
+    private static final ExecutorService READ_EXECUTOR = new ThreadPoolExecutor(
+            READ_THREADS, READ_THREADS, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(READ_QUEUE_CAPACITY),
+            r -> newThread(r, "tasks-db-read"), new ThreadPoolExecutor.AbortPolicy());
+
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+
+    private final DBHelper dbHelper;
+    private final Context appContext; // null — замеры на отдельной БД: напоминания не перевзводятся
+    private final boolean sharedHelper; // общий DBHelper процесса (TaskDatabase): close() отдаёт ссылку
+    private final AtomicInteger queryGeneration = new AtomicInteger();
+    private CancellationSignal pendingQuery; // только из главного потока
+    private Runnable bulkWriteListener; // только из главного потока
+    private volatile boolean closed = false;
+
+    /**
+     * Репозиторий экрана поверх общего на процесс DBHelper (см. TaskDatabase).
+     */
+    public TaskRepository(Context context) {
+        this(TaskDatabase.acquire(context), context.getApplicationContext(), true);
+    }
+
+    // Собственный DBHelper (замеры на отдельной БД): close() закрывает его
+    TaskRepository(DBHelper dbHelper) {
+        this(dbHelper, null, false);
+    }
+
+    private TaskRepository(DBHelper dbHelper, Context appContext, boolean sharedHelper) {
+        this.dbHelper = dbHelper;
+        this.appContext = appContext;
+        this.sharedHelper = sharedHelper;
+    }
+
+    private static Thread newThread(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setPriority(Thread.NORM_PRIORITY - 1);
+        return t;
+    }
+
+    /**
+     * Загружает страницу списка (см. DBHelper.getTasksPage). Первая страница (after == null)
+     * начинает новый запрос и отменяет предыдущий; следующие продолжают текущий и
+     * отбрасываются, если за это время был начат другой запрос.
+     * null — страницу не удалось прочитать (в отличие от пустой страницы — конца списка).
+     */
+    public void getTasksPage(String search, boolean completedFirst, boolean dateDesc, Task after, int limit,
+                             Callback<TaskSnapshot> cb) {
+        if (after == null) {
+            cancelPendingQuery();
+        } else if (pendingQuery != null) {
+            pendingQuery.cancel();
+        }
+        final int generation = after == null ? queryGeneration.incrementAndGet() : queryGeneration.get();
+        final CancellationSignal signal = new CancellationSignal();
+        pendingQuery = signal;
+
+        read(() -> {
+            if (signal.isCanceled()) return null;
+            return dbHelper.getTasksPage(search, completedFirst, dateDesc, after, limit, signal);
+        }, null, result -> {
+            if (generation != queryGeneration.get() || signal.isCanceled()) return;
+            if (pendingQuery == signal) pendingQuery = null;
+            cb.onResult(result);
+        });
+    }
+
+    /**
+     * Пересортировка и уточнение поиска по уже загруженному полному снимку (см. TaskView) —
+     * в фоне, но без обращения к БД. Участвует в той же очерёдности, что и запросы:
+     * отменяет предыдущий и отбрасывается, если после него начат новый.
+     */
+    public void getTaskView(TaskSnapshot source, String sourceSearch, String search,
+                            boolean completedFirst, boolean dateDesc, Callback<TaskSnapshot> cb) {
+        cancelPendingQuery();
+        final int generation = queryGeneration.incrementAndGet();
+
+        read(() -> TaskView.apply(source, sourceSearch, search, completedFirst, dateDesc), null, result -> {
+            if (generation != queryGeneration.get()) return;
+            cb.onResult(result); // null — не удалось выполнить, нужен запрос к БД
+        });
+    }
+
+    public void cancelPendingQuery() {
+        queryGeneration.incrementAndGet();
+        if (pendingQuery != null) {
+            pendingQuery.cancel();
+            pendingQuery = null;
+        }
+    }
+
+    public long getDataVersion() {
+        return DBHelper.getDataVersion();
+    }
+
+    /**
+     * listener вызывается в главном потоке, когда данные изменились в обход репозитория
+     * (фоновая миграция, изменения с сервера) — экран, который сейчас виден, должен перечитать список.
+     * null снимает слушателя.
+     */
+    public void setOnBulkWrite(Runnable listener) {
+        if (bulkWriteListener != null) DBHelper.removeBulkWriteListener(bulkWriteListener);
+        bulkWriteListener = listener == null ? null : () -> MAIN.post(() -> {
+            if (!closed) listener.run();
+        });
+        if (bulkWriteListener != null) DBHelper.addBulkWriteListener(bulkWriteListener);
+    }
+
+    // null — не удалось прочитать (DBHelper.getStats бросил исключение)
+    public void getStats(Callback<TaskStats> cb) {
+        read(dbHelper::getStats, null, cb);
+    }
+
+    /**
+     * Невыполненные задачи со сроком до now + withinSec, включая просроченные, по возрастанию срока.
+     */
+    public void getDueSoon(long withinSec, int limit, Callback<List<Task>> cb) {
+        read(() -> dbHelper.getDueTasks(0, System.currentTimeMillis() / 1000L + withinSec, limit),
+                new ArrayList<>(), cb);
+    }
+
+    public void getTaskById(long id, Callback<Task> cb) {
+        read(() -> dbHelper.getTaskById(id), null, cb);
+    }
+
+    public void addTask(Task task, Callback<Long> cb) {
+        write(() -> dbHelper.addTask(task), -1L, cb);
+    }
+
+    public void updateTask(Task task, Callback<Boolean> cb) {
+        write(() -> dbHelper.updateTask(task), false, cb);
+    }
+
+    // Результат — версия данных после удаления или -1 (см. DBHelper.deleteTask)
+    public void deleteTask(long id, Callback<Long> cb) {
+        write(() -> dbHelper.deleteTask(id), -1L, cb);
+    }
+
+    public void addTasks(List<Task> tasks, Callback<Integer> cb) {
+        write(() -> dbHelper.addTasks(tasks), 0, cb);
+    }
+
+    public void updateTaskStatus(long[] ids, boolean done, Callback<Integer> cb) {
+        write(() -> dbHelper.updateTaskStatus(ids, done), 0, cb);
+    }
+
+    public void updateTaskStatuses(long[] ids, boolean[] done, Callback<Boolean> cb) {
+        write(() -> dbHelper.updateTaskStatuses(ids, done), false, cb);
+    }
+
+    public void deleteTasks(long[] ids, Callback<Integer> cb) {
+        write(() -> dbHelper.deleteTasks(ids), 0, cb);
+    }
+
+    public void deleteDoneTasks(Callback<Integer> cb) {
+        write(dbHelper::deleteDoneTasks, 0, cb);
+    }
+
+    /**
+     * Экспорт всех задач в out (см. TaskTransfer); поток закрывается по окончании.
+     * Прогресс и результат (число задач, -1 при ошибке) — в главном потоке.
+     */
+    public void exportTasks(OutputStream out, TaskTransfer.Format format, TaskTransfer.Progress progress,
+                            Callback<Long> cb) {
+        read(() -> {
+            try (OutputStream o = out) {
+                return new TaskTransfer(dbHelper).export(o, format, mainThread(progress));
+            } catch (IOException e) {
+                Log.e(TAG, "export error", e);
+                return -1L;
+            }
+        }, -1L, cb);
+    }
+
+    /**
+     * Импорт задач из in — в потоке записи, поэтому упорядочен с остальными изменениями.
+     * Результат — число добавленных задач или -1, если файл не удалось разобрать
+     * (пачки, вставленные до ошибки, остаются).
+     */
+    public void importTasks(InputStream in, TaskTransfer.Progress progress, Callback<Long> cb) {
+        write(() -> {
+            try (InputStream i = in) {
+                return new TaskTransfer(dbHelper).importTasks(i, mainThread(progress));
+            } catch (IOException e) {
+                Log.e(TAG, "import error", e);
+                return -1L;
+            }
+        }, -1L, cb);
+    }
+
+    private TaskTransfer.Progress mainThread(TaskTransfer.Progress progress) {
+        if (progress == null) return null;
+        return (rows, bytes) -> MAIN.post(() -> {
+            if (!closed) progress.onProgress(rows, bytes);
+        });
+    }
+
+    /**
+     * Отменяет ожидающий запрос и отдаёт ссылку на общую БД (свой DBHelper — закрывает);
+     * callbacks после этого не вызываются. Повторный вызов ничего не делает.
+     */
+    public void close() {
+        if (closed) return;
+        closed = true;
+        cancelPendingQuery();
+        setOnBulkWrite(null);
+        if (sharedHelper) {
+            TaskDatabase.release();
+        } else {
+            dbHelper.close();
+        }
+    }
+
+    private interface Op<T> {
+        T run();
+    }
+
+    private <T> void read(Op<T> op, T failure, Callback<T> cb) {
+        submit(READ_EXECUTOR, op, failure, cb);
+    }
+
+    // После любой записи ближайший срок мог измениться (новая задача, правка срока, выполнение, удаление)
+    private <T> void write(Op<T> op, T failure, Callback<T> cb) {
+        submit(WRITE_EXECUTOR, () -> {
+            T result = op.run();
+            if (appContext != null) ReminderScheduler.requestReschedule(appContext);
+            return result;
+        }, failure, cb);
+    }
+
+    // Пока операция в очереди и выполняется, у неё своя ссылка на общую БД (см. TaskDatabase):
+    // экран может уже отдать свою, а закрытие по простою не должно прервать транзакцию
+    private <T> void submit(ExecutorService executor, Op<T> op, T failure, Callback<T> cb) {
+        if (sharedHelper) TaskDatabase.retain();
+        try {
+            executor.execute(() -> {
+                T result;
+                try {
+                    result = op.run();
+                } catch (Exception e) {
+                    Log.e(TAG, "db operation error", e);
+                    result = failure;
+                } finally {
+                    if (sharedHelper) TaskDatabase.release();
+                }
+                deliver(cb, result != null ? result : failure);
+            });
+        } catch (RejectedExecutionException e) {
+            if (sharedHelper) TaskDatabase.release();
+            Log.e(TAG, "db queue is full", e);
+            deliver(cb, failure);
+        }
+    }
+
+    private <T> void deliver(Callback<T> cb, T result) {
+        if (cb == null) return;
+        MAIN.post(() -> {
+            if (!closed) cb.onResult(result);
+        });
+    }
+}
@@ -0,0 +1,388 @@
+package com.example.tasklist;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Снимок списка задач в виде столбцов (struct-of-arrays) вместо List&lt;Task&gt;:
+ * id и created_at — примитивные массивы, done и признак обрезанного описания — BitSet, тексты — массивы ссылок.
+ * На задачу не создаётся отдельный объект, а пересортировка — сортировка long[] без компаратора.
+ * <p>
+ * Снимок неизменяем (кроме кэша строк для показа — даты и обрезанного описания, — который заполняется
+ * только из главного потока); смена статуса даёт новый снимок (withDone). append() дописывает строки
+ * в общий запас массивов, поэтому подгрузка страниц не копирует уже загруженные строки.
+ */
+public final class TaskSnapshot {
+    // для упаковки ключа сортировки в long: индекс строки — 21 бит, created_at — 41 бит, done — 1 бит
+    private static final int ROW_BITS = 21;
+    private static final long ROW_MASK = (1L << ROW_BITS) - 1;
+    private static final long CREATED_MASK = (1L << 41) - 1;
+    private static final long ID_LIMIT = 1L << (63 - ROW_BITS);
+
+    public static final TaskSnapshot EMPTY = new Builder(0).build();
+
+    private final long[] ids;
+    private final long[] createdAt;
+    private final BitSet done;
+    private final BitSet truncated; // в descriptions только начало описания (см. DBHelper.SNIPPET_CHARS)
+    private final String[] titles;
+    private final String[] descriptions;
+    private final String[] createdAtTexts; // отформатированные даты, заполняет TaskAdapter
+    private final String[] descriptionTexts; // обрезанные описания с «…» для показа, заполняет TaskAdapter
+    private final int size;
+    private final int[] written; // сколько строк записано в общие массивы (общий счётчик всех снимков над ними)
+
+    private TaskSnapshot(long[] ids, long[] createdAt, BitSet done, BitSet truncated, String[] titles,
+                         String[] descriptions, String[] createdAtTexts, String[] descriptionTexts, int size,
+                         int[] written) {
+        this.ids = ids;
+        this.createdAt = createdAt;
+        this.done = done;
+        this.truncated = truncated;
+        this.titles = titles;
+        this.descriptions = descriptions;
+        this.createdAtTexts = createdAtTexts;
+        this.descriptionTexts = descriptionTexts;
+        this.size = size;
+        this.written = written;
+    }
+
+    public static TaskSnapshot of(List<Task> tasks) {
+        Builder b = new Builder(tasks.size());
+        for (Task t : tasks) b.add(t);
+        return b.build();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long getId(int row) {
+        return ids[row];
+    }
+
+    public long getCreatedAt(int row) {
+        return createdAt[row];
+    }
+
+    public boolean isDone(int row) {
+        return done.get(row);
+    }
+
+    public String getTitle(int row) {
+        return titles[row];
+    }
+
+    public String getDescription(int row) {
+        return descriptions[row];
+    }
+
+    // Описание строки обрезано: полный текст — DBHelper.getTaskById
+    public boolean isDescriptionTruncated(int row) {
+        return truncated.get(row);
+    }
+
+    public String getCreatedAtText(int row) {
+        return createdAtTexts[row];
+    }
+
+    public void setCreatedAtText(int row, String text) {
+        createdAtTexts[row] = text;
+    }
+
+    public String getDescriptionText(int row) {
+        return descriptionTexts[row];
+    }
+
+    public void setDescriptionText(int row, String text) {
+        descriptionTexts[row] = text;
+    }
+
+    /**
+     * Снимок с другим статусом строки. done общий со снимками, полученными через append(), а прежний
+     * снимок может в это время сравниваться в фоне (DiffUtil, TaskView), поэтому копируется только
+     * BitSet статусов, остальные массивы остаются общими.
+     */
+    public TaskSnapshot withDone(int row, boolean value) {
+        return withDone(new int[]{row}, new boolean[]{value}, 1);
+    }
+
+    // То же для count строк сразу: одна копия BitSet на все
+    public TaskSnapshot withDone(int[] rows, boolean[] values, int count) {
+        BitSet copy = null;
+        for (int i = 0; i < count; i++) {
+            if (done.get(rows[i]) == values[i]) continue;
+            if (copy == null) copy = (BitSet) done.clone();
+            copy.set(rows[i], values[i]);
+        }
+        if (copy == null) return this;
+        return new TaskSnapshot(ids, createdAt, copy, truncated, titles, descriptions, createdAtTexts,
+                descriptionTexts, size, written);
+    }
+
+    // Task создаётся только по требованию (открытие, удаление задачи), а не на каждую строку
+    public Task toTask(int row) {
+        Task t = new Task(ids[row], titles[row], descriptions[row], done.get(row), createdAt[row]);
+        t.setDescriptionTruncated(truncated.get(row));
+        return t;
+    }
+
+    public int indexOf(long id) {
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == id) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Снимок с добавленными в конец задачами. Если после этого снимка в его массивы ещё
+     * никто не дописывал, строки дописываются на место, иначе массивы копируются с запасом.
+     * Задачи, которые уже есть в снимке, пропускаются: задача со сменённым статусом могла
+     * перейти через ключ keyset-пагинации и прийти ещё раз в следующей странице,
+     * а две строки с одним id ломают стабильные id адаптера.
+     */
+    public TaskSnapshot append(TaskSnapshot page) {
+        long[] present = presentIds(Arrays.copyOf(page.ids, page.size));
+        int newSize = size + page.size - present.length;
+        if (newSize == size) return this;
+        if (written[0] == size && newSize <= ids.length) {
+            int row = size;
+            for (int i = 0; i < page.size; i++) {
+                if (Arrays.binarySearch(present, page.ids[i]) < 0) copyRow(page, i, this, row++);
+            }
+            written[0] = newSize;
+            return new TaskSnapshot(ids, createdAt, done, truncated, titles, descriptions, createdAtTexts,
+                    descriptionTexts, newSize, written);
+        }
+        Builder b = new Builder(Math.max(newSize, size + size / 2));
+        b.addAll(this);
+        for (int i = 0; i < page.size; i++) {
+            if (Arrays.binarySearch(present, page.ids[i]) < 0) b.addRow(page, i);
+        }
+        return b.build();
+    }
+
+    // Отсортированные id из candidates (сортируется на месте), которые уже есть в снимке: один проход по снимку
+    private long[] presentIds(long[] candidates) {
+        Arrays.sort(candidates);
+        long[] found = new long[candidates.length];
+        int count = 0;
+        for (int i = 0; i < size && count < found.length; i++) {
+            if (Arrays.binarySearch(candidates, ids[i]) >= 0) found[count++] = ids[i];
+        }
+        found = Arrays.copyOf(found, count);
+        Arrays.sort(found);
+        return found;
+    }
+
+    public TaskSnapshot without(long id) {
+        int row = indexOf(id);
+        if (row < 0) return this;
+        Builder b = new Builder(size - 1);
+        for (int i = 0; i < size; i++) {
+            if (i != row) b.addRow(this, i);
+        }
+        return b.build();
+    }
+
+    public TaskSnapshot withInserted(int position, Task task) {
+        Builder b = new Builder(size + 1);
+        for (int i = 0; i < position; i++) b.addRow(this, i);
+        b.add(task);
+        for (int i = position; i < size; i++) b.addRow(this, i);
+        return b.build();
+    }
+
+    /**
+     * Снимок из строк с указанными номерами (в указанном порядке).
+     */
+    public TaskSnapshot select(int[] rows, int count) {
+        Builder b = new Builder(count);
+        for (int i = 0; i < count; i++) b.addRow(this, rows[i]);
+        return b.build();
+    }
+
+    /**
+     * Позиция, на которую нужно вставить задачу, чтобы сохранить порядок (см. DBHelper.orderBy).
+     * Снимок должен быть отсортирован в том же порядке.
+     */
+    public int insertionPoint(Task task, boolean completedFirst, boolean dateDesc) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, task.isDone(), task.getCreatedAt(), task.getId(), completedFirst, dateDesc) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int compare(int row, boolean d, long created, long id, boolean completedFirst, boolean dateDesc) {
+        int cmp = Boolean.compare(done.get(row), d);
+        if (cmp == 0) {
+            cmp = Long.compare(createdAt[row], created);
+            if (cmp != 0) return dateDesc ? -cmp : cmp;
+            cmp = Long.compare(ids[row], id);
+        }
+        return completedFirst ? -cmp : cmp;
+    }
+
+    /**
+     * Пересортировка в порядке DBHelper.orderBy без запроса к БД: ключ (done, created_at, ранг id)
+     * упаковывается в long, и сортируется массив примитивов.
+     */
+    public TaskSnapshot sorted(boolean completedFirst, boolean dateDesc) {
+        if (size < 2) return this;
+        if (size > ROW_MASK) return sortedSlow(completedFirst, dateDesc);
+
+        // 1) ранги id: сортируем (id, строка) и получаем строку по рангу
+        long[] byId = new long[size];
+        for (int i = 0; i < size; i++) {
+            if (ids[i] < 0 || ids[i] >= ID_LIMIT) return sortedSlow(completedFirst, dateDesc);
+            byId[i] = (ids[i] << ROW_BITS) | i;
+        }
+        Arrays.sort(byId);
+        int[] rowOfRank = new int[size];
+        int[] rankOfRow = new int[size];
+        for (int r = 0; r < size; r++) {
+            int row = (int) (byId[r] & ROW_MASK);
+            rowOfRank[r] = row;
+            rankOfRow[row] = r;
+        }
+
+        // 2) ключ: done | created_at | ранг id, направления — инверсией соответствующих полей
+        long[] keys = byId; // массив больше не нужен, переиспользуем
+        for (int i = 0; i < size; i++) {
+            long d = done.get(i) ? 1 : 0;
+            long c = Math.max(0, Math.min(createdAt[i], CREATED_MASK));
+            long r = rankOfRow[i];
+            if (completedFirst) {
+                d ^= 1;
+                r = ROW_MASK - r;
+            }
+            if (dateDesc) c = CREATED_MASK - c;
+            keys[i] = (d << 62) | (c << ROW_BITS) | r;
+        }
+        Arrays.sort(keys);
+
+        int[] rows = rankOfRow; // переиспользуем
+        for (int i = 0; i < size; i++) {
+            long r = keys[i] & ROW_MASK;
+            if (completedFirst) r = ROW_MASK - r;
+            rows[i] = rowOfRank[(int) r];
+        }
+        return select(rows, size);
+    }
+
+    // Запасной путь для данных, не помещающихся в упакованный ключ
+    private TaskSnapshot sortedSlow(boolean completedFirst, boolean dateDesc) {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> compare(a, done.get(b), createdAt[b], ids[b], completedFirst, dateDesc));
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) rows[i] = order[i];
+        return select(rows, size);
+    }
+
+    private static void copyRow(TaskSnapshot from, int fromRow, TaskSnapshot to, int row) {
+        to.ids[row] = from.ids[fromRow];
+        to.createdAt[row] = from.createdAt[fromRow];
+        to.done.set(row, from.done.get(fromRow));
+        to.titles[row] = from.titles[fromRow];
+        to.descriptions[row] = from.descriptions[fromRow];
+        to.truncated.set(row, from.truncated.get(fromRow));
+        to.createdAtTexts[row] = from.createdAtTexts[fromRow];
+        to.descriptionTexts[row] = from.descriptionTexts[fromRow];
+    }
+
+    /**
+     * Построение снимка по строкам (например, прямо из курсора, без промежуточных Task).
+     */
+    public static final class Builder {
+        private long[] ids;
+        private long[] createdAt;
+        private final BitSet done;
+        private final BitSet truncated;
+        private String[] titles;
+        private String[] descriptions;
+        private String[] createdAtTexts;
+        private String[] descriptionTexts;
+        private int size;
+
+        public Builder(int capacity) {
+            capacity = Math.max(0, capacity);
+            ids = new long[capacity];
+            createdAt = new long[capacity];
+            done = new BitSet(capacity);
+            truncated = new BitSet();
+            titles = new String[capacity];
+            descriptions = new String[capacity];
+            createdAtTexts = new String[capacity];
+            descriptionTexts = new String[capacity];
+        }
+
+        public Builder add(long id, String title, String description, boolean isDone, long created) {
+            return add(id, title, description, false, isDone, created);
+        }
+
+        // descriptionTruncated — в description только начало текста
+        public Builder add(long id, String title, String description, boolean descriptionTruncated,
+                           boolean isDone, long created) {
+            ensureCapacity(size + 1);
+            ids[size] = id;
+            createdAt[size] = created;
+            done.set(size, isDone);
+            if (descriptionTruncated) truncated.set(size);
+            titles[size] = title;
+            descriptions[size] = description;
+            size++;
+            return this;
+        }
+
+        public Builder add(Task t) {
+            return add(t.getId(), t.getTitle(), t.getDescription(), t.isDescriptionTruncated(), t.isDone(),
+                    t.getCreatedAt());
+        }
+
+        public int size() {
+            return size;
+        }
+
+        Builder addRow(TaskSnapshot s, int row) {
+            add(s.ids[row], s.titles[row], s.descriptions[row], s.truncated.get(row), s.done.get(row),
+                    s.createdAt[row]);
+            createdAtTexts[size - 1] = s.createdAtTexts[row];
+            descriptionTexts[size - 1] = s.descriptionTexts[row];
+            return this;
+        }
+
+        Builder addAll(TaskSnapshot s) {
+            for (int i = 0; i < s.size; i++) addRow(s, i);
+            return this;
+        }
+
+        public TaskSnapshot build() {
+            return new TaskSnapshot(ids, createdAt, done, truncated, titles, descriptions, createdAtTexts,
+                    descriptionTexts, size, new int[]{size});
+        }
+
+        private void ensureCapacity(int needed) {
+            if (needed <= ids.length) return;
+            int capacity = Math.max(needed, Math.max(16, ids.length + ids.length / 2));
+            ids = Arrays.copyOf(ids, capacity);
+            createdAt = Arrays.copyOf(createdAt, capacity);
+            titles = Arrays.copyOf(titles, capacity);
+            descriptions = Arrays.copyOf(descriptions, capacity);
+            createdAtTexts = Arrays.copyOf(createdAtTexts, capacity);
+            descriptionTexts = Arrays.copyOf(descriptionTexts, capacity);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.tasklist;
+
+/**
+ * Счётчики задач для заголовка списка (см. DBHelper.getStats).
+ */
+public final class TaskStats {
+    public static final TaskStats EMPTY = new TaskStats(0, 0);
+
+    private final long total;
+    private final long done;
+
+    public TaskStats(long total, long done) {
+        this.total = total;
+        this.done = done;
+    }
+
+    public long getTotal() { return total; }
+
+    public long getDone() { return done; }
+
+    public long getPending() { return total - done; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof TaskStats)) return false;
+        TaskStats other = (TaskStats) o;
+        return total == other.total && done == other.done;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (total * 31 + done);
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.tasklist;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Экспорт и импорт задач потоком, без сбора таблицы или файла в память.
+ * <p>
+ * Форматы:
+ * <ul>
+ * <li>NDJSON — по JSON-объекту на строку: {"id", "title", "description", "done", "created_at", "due_at"};</li>
+ * <li>BINARY — заголовок "TSKB" и версия, затем записи: varint id, varint created_at, байт флагов
+ * (1 — выполнена, 2 — есть описание, 4 — есть срок), varint due_at при флаге 4, заголовок
+ * и описание как varint-длина + UTF-8. Файлы версии 1 (без срока) по-прежнему читаются.</li>
+ * </ul>
+ * Экспорт читает таблицу порциями (DBHelper.forEachTask), импорт разбирает файл по записи
+ * и вставляет пачками по IMPORT_BATCH в одной транзакции. Формат при импорте определяется по заголовку.
+ * id из файла не сохраняются: задачи получают новые id, дата создания, статус и срок переносятся.
+ */
+public class TaskTransfer {
+    public static final int IMPORT_BATCH = 1_000;
+    private static final int EXPORT_CHUNK = 1_000;
+    private static final int PROGRESS_EVERY = 1_000;
+    private static final int MAX_STRING_BYTES = 16 * 1024 * 1024; // защита от повреждённого файла
+
+    private static final byte[] MAGIC = {'T', 'S', 'K', 'B'};
+    private static final int BINARY_VERSION = 2; // 2 — добавлен срок (FLAG_HAS_DUE)
+    private static final int BINARY_VERSION_NO_DUE = 1;
+    private static final int FLAG_DONE = 1;
+    private static final int FLAG_HAS_DESC = 2;
+    private static final int FLAG_HAS_DUE = 4;
+
+    public enum Format {
+        NDJSON, BINARY
+    }
+
+    public interface Progress {
+        // rows — сколько задач обработано, bytes — сколько байт файла прочитано/записано
+        void onProgress(long rows, long bytes);
+    }
+
+    private final DBHelper db;
+
+    public TaskTransfer(DBHelper db) {
+        this.db = db;
+    }
+
+    /**
+     * Записывает все задачи в out (поток не закрывается). Возвращает число задач.
+     */
+    public long export(OutputStream out, Format format, Progress progress) throws IOException {
+        CountingOutputStream counted = new CountingOutputStream(out);
+        long rows;
+        if (format == Format.NDJSON) {
+            Writer w = new BufferedWriter(new OutputStreamWriter(counted, StandardCharsets.UTF_8), 64 * 1024);
+            rows = db.forEachTask(EXPORT_CHUNK, new DBHelper.RowConsumer() {
+                long n = 0;
+
+                @Override
+                public void accept(long id, String title, String description, boolean done, long createdAt,
+                                   long dueAt) throws IOException {
+                    w.write("{\"id\":");
+                    w.write(Long.toString(id));
+                    w.write(",\"title\":");
+                    w.write(JSONObject.quote(title != null ? title : ""));
+                    w.write(",\"description\":");
+                    w.write(description != null ? JSONObject.quote(description) : "null");
+                    w.write(done ? ",\"done\":true" : ",\"done\":false");
+                    w.write(",\"created_at\":");
+                    w.write(Long.toString(createdAt));
+                    w.write(",\"due_at\":");
+                    w.write(dueAt > 0 ? Long.toString(dueAt) : "null");
+                    w.write("}\n");
+                    if (++n % PROGRESS_EVERY == 0 && progress != null) {
+                        w.flush();
+                        progress.onProgress(n, counted.count);
+                    }
+                }
+            });
+            w.flush();
+        } else {
+            BufferedOutputStream b = new BufferedOutputStream(counted, 64 * 1024);
+            b.write(MAGIC);
+            b.write(BINARY_VERSION);
+            rows = db.forEachTask(EXPORT_CHUNK, new DBHelper.RowConsumer() {
+                long n = 0;
+
+                @Override
+                public void accept(long id, String title, String description, boolean done, long createdAt,
+                                   long dueAt) throws IOException {
+                    writeVarLong(b, id);
+                    writeVarLong(b, createdAt);
+                    b.write((done ? FLAG_DONE : 0) | (description != null ? FLAG_HAS_DESC : 0)
+                            | (dueAt > 0 ? FLAG_HAS_DUE : 0));
+                    if (dueAt > 0) writeVarLong(b, dueAt);
+                    writeString(b, title != null ? title : "");
+                    if (description != null) writeString(b, description);
+                    if (++n % PROGRESS_EVERY == 0 && progress != null) {
+                        progress.onProgress(n, counted.count);
+                    }
+                }
+            });
+            b.flush();
+        }
+        if (progress != null) progress.onProgress(rows, counted.count);
+        return rows;
+    }
+
+    /**
+     * Читает задачи из in (формат по заголовку) и добавляет их в БД. Поток не закрывается.
+     * Возвращает число добавленных задач; при ошибке уже вставленные пачки остаются.
+     */
+    public long importTasks(InputStream in, Progress progress) throws IOException {
+        CountingInputStream counted = new CountingInputStream(in);
+        BufferedInputStream b = new BufferedInputStream(counted, 64 * 1024);
+        b.mark(MAGIC.length);
+        byte[] head = new byte[MAGIC.length];
+        int read = 0;
+        while (read < head.length) {
+            int n = b.read(head, read, head.length - read);
+            if (n < 0) break;
+            read += n;
+        }
+        boolean binary = read == MAGIC.length && Arrays.equals(head, MAGIC);
+        if (!binary) b.reset();
+
+        Importer importer = new Importer(progress, counted);
+        if (binary) {
+            int version = b.read();
+            if (version != BINARY_VERSION && version != BINARY_VERSION_NO_DUE) throw new IOException("Unsupported format version: " + version);
+            while (true) {
+                int first = b.read();
+                if (first < 0) break; // конец файла на границе записи
+                long id = readVarLong(b, first);
+                long createdAt = readVarLong(b);
+                int flags = b.read();
+                if (flags < 0) throw new EOFException("Truncated record after id " + id);
+                long dueAt = (flags & FLAG_HAS_DUE) != 0 ? readVarLong(b) : 0;
+                String title = readString(b);
+                String description = (flags & FLAG_HAS_DESC) != 0 ? readString(b) : null;
+                Task task = new Task(-1, title, description, (flags & FLAG_DONE) != 0, createdAt);
+                task.setDueAt(dueAt);
+                importer.add(task);
+            }
+        } else {
+            BufferedReader r = new BufferedReader(new InputStreamReader(b, StandardCharsets.UTF_8));
+            String line;
+            long lineNo = 0;
+            while ((line = r.readLine()) != null) {
+                lineNo++;
+                if (line.trim().isEmpty()) continue;
+                try {
+                    JSONObject o = new JSONObject(line);
+                    String description = o.isNull("description") ? null : o.optString("description");
+                    Task task = new Task(-1, o.getString("title"), description,
+                            o.optBoolean("done", false), o.optLong("created_at", 0));
+                    task.setDueAt(o.isNull("due_at") ? 0 : o.optLong("due_at", 0));
+                    importer.add(task);
+                } catch (JSONException e) {
+                    throw new IOException("Bad record at line " + lineNo + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return importer.finish();
+    }
+
+    // Накапливает задачи и вставляет их пачками: в памяти не больше IMPORT_BATCH задач
+    private class Importer {
+        private final Progress progress;
+        private final CountingInputStream counted;
+        private final List<Task> batch = new ArrayList<>(IMPORT_BATCH);
+        private long inserted = 0;
+
+        Importer(Progress progress, CountingInputStream counted) {
+            this.progress = progress;
+            this.counted = counted;
+        }
+
+        void add(Task task) throws IOException {
+            batch.add(task);
+            if (batch.size() == IMPORT_BATCH) flush();
+        }
+
+        long finish() throws IOException {
+            flush();
+            return inserted;
+        }
+
+        private void flush() throws IOException {
+            if (batch.isEmpty()) return;
+            int n = db.addTasks(batch);
+            if (n == 0) throw new IOException("Insert failed after " + inserted + " tasks");
+            inserted += n;
+            batch.clear();
+            if (progress != null) progress.onProgress(inserted, counted.count);
+        }
+    }
+
+    // ---------- двоичный формат ----------
+
+    private static void writeVarLong(OutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        int first = in.read();
+        if (first < 0) throw new EOFException("Truncated varint");
+        return readVarLong(in, first);
+    }
+
+    // first — уже прочитанный первый байт
+    private static long readVarLong(InputStream in, int first) throws IOException {
+        long v = first & 0x7F;
+        int b = first;
+        for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+            if (shift >= 64) throw new IOException("Malformed varint");
+            b = in.read();
+            if (b < 0) throw new EOFException("Truncated varint");
+            v |= (long) (b & 0x7F) << shift;
+        }
+        return v;
+    }
+
+    private static void writeString(OutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(InputStream in) throws IOException {
+        long len = readVarLong(in);
+        if (len < 0 || len > MAX_STRING_BYTES) throw new IOException("Bad string length: " + len);
+        byte[] bytes = new byte[(int) len];
+        int read = 0;
+        while (read < bytes.length) {
+            int n = in.read(bytes, read, bytes.length - read);
+            if (n < 0) throw new EOFException("Truncated string");
+            read += n;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ---------- подсчёт байт для прогресса ----------
+
+    private static final class CountingOutputStream extends OutputStream {
+        private final OutputStream out;
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+}
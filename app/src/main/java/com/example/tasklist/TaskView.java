@@ -0,0 +1,143 @@
+package com.example.tasklist;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Сортировка и поиск по уже загруженному снимку без запроса к SQLite.
+ * Применимо, только если снимок содержит весь результат предыдущего запроса:
+ * тогда смена сортировки — пересортировка снимка, а уточнение поиска
+ * (новый запрос сужает предыдущий) — фильтрация его строк.
+ * <p>
+ * Поиск повторяет FTS-запрос DBHelper.toMatchQuery: каждое слово запроса — префикс
+ * какого-либо слова заголовка или описания; регистр и диакритика латиницы не учитываются,
+ * как в токенизаторе unicode61.
+ */
+public final class TaskView {
+
+    private TaskView() {
+    }
+
+    /**
+     * Результат поиска next гарантированно входит в результат поиска previous
+     * (null — без поиска, т. е. все задачи).
+     */
+    public static boolean narrows(String previous, String next) {
+        String[] prev = tokens(previous);
+        if (prev.length == 0) return true;
+        String[] cur = tokens(next);
+        // каждое слово старого запроса должно быть префиксом какого-то слова нового
+        for (String p : prev) {
+            boolean implied = false;
+            for (String n : cur) {
+                if (n.startsWith(p)) {
+                    implied = true;
+                    break;
+                }
+            }
+            if (!implied) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Снимок source, отфильтрованный по search (если он отличается от sourceSearch)
+     * и отсортированный в порядке DBHelper.orderBy(completedFirst, dateDesc).
+     * Вызывающий проверяет narrows(sourceSearch, search). null — в памяти не решить:
+     * строка не совпала по началу описания, а полного описания в снимке нет (нужен запрос к БД).
+     */
+    public static TaskSnapshot apply(TaskSnapshot source, String sourceSearch, String search,
+                                     boolean completedFirst, boolean dateDesc) {
+        TaskSnapshot filtered = source;
+        String[] tokens = tokens(search);
+        if (tokens.length > 0 && !sameTokens(tokens, tokens(sourceSearch))) {
+            filtered = filter(source, tokens);
+            if (filtered == null) return null;
+        }
+        return filtered.sorted(completedFirst, dateDesc);
+    }
+
+    private static TaskSnapshot filter(TaskSnapshot source, String[] tokens) {
+        int[] rows = new int[source.size()];
+        int count = 0;
+        for (int i = 0; i < source.size(); i++) {
+            if (matches(fold(source.getTitle(i)), fold(source.getDescription(i)), tokens)) {
+                rows[count++] = i;
+            } else if (source.isDescriptionTruncated(i)) {
+                // совпадение в начале описания верно и для полного текста, а несовпадение — нет
+                return null;
+            }
+        }
+        return count == source.size() ? source : source.select(rows, count);
+    }
+
+    private static boolean matches(String title, String desc, String[] tokens) {
+        for (String token : tokens) {
+            if (!hasWordWithPrefix(title, token) && !hasWordWithPrefix(desc, token)) return false;
+        }
+        return true;
+    }
+
+    private static boolean hasWordWithPrefix(String text, String prefix) {
+        int n = text.length();
+        for (int i = 0; i + prefix.length() <= n; i++) {
+            boolean wordStart = Character.isLetterOrDigit(text.charAt(i))
+                    && (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)));
+            if (wordStart && text.startsWith(prefix, i)) return true;
+        }
+        return false;
+    }
+
+    // Слова запроса — так же, как в DBHelper.toMatchQuery
+    static String[] tokens(String search) {
+        if (search == null) return new String[0];
+        List<String> out = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        for (int i = 0, n = search.length(); i <= n; i++) {
+            char ch = i < n ? search.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(ch)) {
+                token.append(ch);
+            } else if (token.length() > 0) {
+                out.add(fold(token.toString()));
+                token.setLength(0);
+            }
+        }
+        return out.toArray(new String[0]);
+    }
+
+    private static boolean sameTokens(String[] a, String[] b) {
+        if (a.length != b.length) return false;
+        for (int i = 0; i < a.length; i++) {
+            if (!a[i].equals(b[i])) return false;
+        }
+        return true;
+    }
+
+    // Нижний регистр и удаление диакритики у латинских букв (remove_diacritics токенизатора unicode61)
+    static String fold(String s) {
+        if (s == null) return "";
+        String lower = s.toLowerCase(Locale.ROOT);
+        boolean plain = true;
+        for (int i = 0; i < lower.length() && plain; i++) {
+            char ch = lower.charAt(i);
+            plain = ch < 0xC0 || (ch >= 0x250 && (ch < 0x300 || ch > 0x36F));
+        }
+        if (plain) return lower;
+
+        String nfd = Normalizer.normalize(lower, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(nfd.length());
+        char base = 0;
+        for (int i = 0; i < nfd.length(); i++) {
+            char ch = nfd.charAt(i);
+            if (Character.getType(ch) == Character.NON_SPACING_MARK) {
+                if (base < 0x250) continue;
+            } else {
+                base = ch;
+            }
+            sb.append(ch);
+        }
+        return Normalizer.normalize(sb, Normalizer.Form.NFC);
+    }
+}